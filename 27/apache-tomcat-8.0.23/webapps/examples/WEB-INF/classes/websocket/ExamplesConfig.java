@@ -16,6 +16,7 @@
  */
 package websocket;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -41,9 +42,19 @@ public class ExamplesConfig implements ServerApplicationConfig {
         }
 
         if (scanned.contains(DrawboardEndpoint.class)) {
+            // The default room, and any other room by id.
             result.add(ServerEndpointConfig.Builder.create(
                     DrawboardEndpoint.class,
-                    "/websocket/drawboard").build());
+                    "/websocket/drawboard")
+                    .subprotocols(Arrays.asList(
+                            DrawboardEndpoint.BINARY_SUBPROTOCOL))
+                    .build());
+            result.add(ServerEndpointConfig.Builder.create(
+                    DrawboardEndpoint.class,
+                    "/websocket/drawboard/{" + DrawboardEndpoint.ROOM_ID_PARAM + "}")
+                    .subprotocols(Arrays.asList(
+                            DrawboardEndpoint.BINARY_SUBPROTOCOL))
+                    .build());
         }
 
         return result;
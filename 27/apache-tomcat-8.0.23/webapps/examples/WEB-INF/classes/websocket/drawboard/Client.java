@@ -17,7 +17,13 @@
 package websocket.drawboard;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCodes;
@@ -32,37 +38,100 @@ import websocket.drawboard.wsmessages.CloseWebsocketMessage;
 import websocket.drawboard.wsmessages.StringWebsocketMessage;
 
 /**
- * Represents a client with methods to send messages asynchronously.
+ * Represents a client with methods to send messages asynchronously.<br><br>
+ *
+ * Messages are put into a lock-free queue by any number of threads (e.g.
+ * the shards of the rooms) and taken out by a single drain loop: whoever
+ * finds no send in progress starts it, and the {@link SendHandler} of each
+ * send continues it until the queue is empty. So a slow client never makes
+ * the sending threads wait.<br><br>
+ *
+ * Closing the session may block until the remote endpoint reads the data
+ * still being sent, so it is done on a separate close executor and never on
+ * the thread that asked for it (a shard or a container thread).
  */
 public class Client {
 
+    /**
+     * If more messages or bytes than this are queued, the client is
+     * disconnected to prevent DoS.
+     */
+    private static final int MAX_QUEUED_MESSAGES = 1000;
+    private static final long MAX_QUEUED_BYTES = 1000000;
+
+    /**
+     * If more messages or bytes than this are queued, the client is
+     * congested, and the Room sends it fewer DrawMessages (see
+     * {@link #isCongested()}). This is far below the limits above, so a
+     * client that is just slow is not disconnected.
+     */
+    private static final int CONGESTED_QUEUED_MESSAGES = 50;
+    private static final long CONGESTED_QUEUED_BYTES = 65536;
+
     private final Session session;
     private final Async async;
 
+    /**
+     * Runs the blocking {@link Session#close()} calls.
+     */
+    private final Executor closeExecutor;
+
     /**
      * Contains the messages wich are buffered until the previous
      * send operation has finished.
      */
-    private final LinkedList<AbstractWebsocketMessage> messagesToSend =
-            new LinkedList<>();
+    private final Queue<AbstractWebsocketMessage> messagesToSend =
+            new ConcurrentLinkedQueue<>();
     /**
-     * If this client is currently sending a messages asynchronously.
+     * Number and length in bytes (as sent, i.e. UTF-8 for strings) of the
+     * messages in {@link #messagesToSend}, to avoid iterating over the
+     * queue.
      */
-    private volatile boolean isSendingMessage = false;
+    private final AtomicInteger messagesToSendCount = new AtomicInteger();
+    private final AtomicLong messagesToSendLength = new AtomicLong();
+    /**
+     * If this client is currently sending a messages asynchronously. Only
+     * the thread that sets it to <code>true</code> runs the drain loop.
+     */
+    private final AtomicBoolean isSendingMessage = new AtomicBoolean();
     /**
      * If this client is closing. If <code>true</code>, new messages to
      * send will be ignored.
      */
-    private volatile boolean isClosing = false;
+    private final AtomicBoolean isClosing = new AtomicBoolean();
+
+    /**
+     * Used by the drain loop to join consecutive string messages. Only
+     * accessed by the thread that runs the drain loop.
+     */
+    private final StringBuilder coalesceBuffer = new StringBuilder();
+
     /**
-     * The length of all current buffered messages, to avoid iterating
-     * over a linked list.
+     * If the client negotiated the binary protocol
+     * ({@link DrawboardEndpoint#BINARY_SUBPROTOCOL}) and therefore sends and
+     * receives DrawMessages as binary messages.
      */
-    private volatile long messagesToSendLength = 0;
+    private final boolean binaryProtocol;
 
-    public Client(Session session) {
+    public Client(Session session, Executor closeExecutor) {
         this.session = session;
+        this.closeExecutor = closeExecutor;
         this.async = session.getAsyncRemote();
+        this.binaryProtocol = DrawboardEndpoint.BINARY_SUBPROTOCOL.equals(
+                session.getNegotiatedSubprotocol());
+    }
+
+    public boolean usesBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    /**
+     * Returns if the messages sent to this client are piling up because the
+     * client or its connection can't keep up.
+     */
+    public boolean isCongested() {
+        return messagesToSendCount.get() >= CONGESTED_QUEUED_MESSAGES
+                || messagesToSendLength.get() >= CONGESTED_QUEUED_BYTES;
     }
 
     /**
@@ -71,7 +140,51 @@ public class Client {
      * the Websocket session.
      */
     public void close() {
-        sendMessage(new CloseWebsocketMessage());
+        if (isClosing.compareAndSet(false, true)) {
+            enqueue(new CloseWebsocketMessage());
+        }
+    }
+
+    /**
+     * Closes the Websocket session immediately with the given reason and
+     * discards the messages that have not been sent yet. Used when the
+     * client exceeds a limit.
+     */
+    public void abort(CloseReason reason) {
+        if (isClosing.compareAndSet(false, true)) {
+            // Note that when this method is called, the RemoteEndpoint.Async
+            // may still be in the process of sending data, so close() may
+            // block until that send completes or times out.
+            closeSession(reason);
+        }
+    }
+
+    /**
+     * Closes the session on the close executor, with the given reason or
+     * normally if it is <code>null</code>. If the executor has been shut
+     * down, the session is closed on the current thread.
+     */
+    private void closeSession(final CloseReason reason) {
+        Runnable close = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (reason == null) {
+                        session.close();
+                    } else {
+                        session.close(reason);
+                    }
+                } catch (IOException ex) {
+                    // Ignore
+                }
+            }
+        };
+        try {
+            closeExecutor.execute(close);
+        } catch (RejectedExecutionException ex) {
+            // The drawboard is being shut down.
+            close.run();
+        }
     }
 
     /**
@@ -83,111 +196,136 @@ public class Client {
      * @param msg
      */
     public void sendMessage(AbstractWebsocketMessage msg) {
-        synchronized (messagesToSend) {
-            if (!isClosing) {
-                // Check if we have a Close message
-                if (msg instanceof CloseWebsocketMessage) {
-                    isClosing = true;
-                }
+        if (msg instanceof CloseWebsocketMessage) {
+            close();
+            return;
+        }
+        if (isClosing.get()) {
+            return;
+        }
 
-                if (isSendingMessage) {
-                    // Check if the buffered messages exceed
-                    // a specific amount - in that case, disconnect the client
-                    // to prevent DoS.
-                    // In this case we check if there are >= 1000 messages
-                    // or length(of all messages) >= 1000000 bytes.
-                    if (messagesToSend.size() >= 1000
-                            || messagesToSendLength >= 1000000) {
-                        isClosing = true;
-
-                        // Discard the new message and close the session immediately.
-                        CloseReason cr = new CloseReason(
-                                CloseCodes.VIOLATED_POLICY,
-                                "Send Buffer exceeded");
-                        try {
-                            // TODO: close() may block if the remote endpoint doesn't read the data
-                            // (eventually there will be a TimeoutException). However, this method
-                            // (sendMessage) is intended to run asynchronous code and shouldn't
-                            // block. Otherwise it would temporarily stop processing of messages
-                            // from other clients.
-                            // Maybe call this method on another thread.
-                            // Note that when this method is called, the RemoteEndpoint.Async
-                            // is still in the process of sending data, so there probably should
-                            // be another way to abort the Websocket connection.
-                            // Ideally, there should be some abort() method that cancels the
-                            // connection immediately...
-                            session.close(cr);
-                        } catch (IOException e) {
-                            // Ignore
-                        }
+        // Check if the buffered messages exceed a specific amount - in that
+        // case, disconnect the client to prevent DoS.
+        if (messagesToSendCount.get() >= MAX_QUEUED_MESSAGES
+                || messagesToSendLength.get() >= MAX_QUEUED_BYTES) {
+            // Discard the new message and close the session immediately.
+            abort(new CloseReason(CloseCodes.VIOLATED_POLICY,
+                    "Send Buffer exceeded"));
+            return;
+        }
 
-                    } else {
+        enqueue(msg);
+    }
 
-                        // Check if the last message and the new message are
-                        // String messages - in that case we concatenate them
-                        // to reduce TCP overhead (using ";" as separator).
-                        if (msg instanceof StringWebsocketMessage
-                                && !messagesToSend.isEmpty()
-                                && messagesToSend.getLast()
-                                instanceof StringWebsocketMessage) {
-
-                            StringWebsocketMessage ms =
-                                    (StringWebsocketMessage) messagesToSend.removeLast();
-                            messagesToSendLength -= calculateMessageLength(ms);
-
-                            String concatenated = ms.getString() + ";" +
-                                    ((StringWebsocketMessage) msg).getString();
-                            msg = new StringWebsocketMessage(concatenated);
-                        }
-
-                        messagesToSend.add(msg);
-                        messagesToSendLength += calculateMessageLength(msg);
-                    }
-                } else {
-                    isSendingMessage = true;
-                    internalSendMessageAsync(msg);
-                }
-            }
+    private void enqueue(AbstractWebsocketMessage msg) {
+        messagesToSendCount.incrementAndGet();
+        messagesToSendLength.addAndGet(calculateMessageLength(msg));
+        messagesToSend.add(msg);
 
+        if (isSendingMessage.compareAndSet(false, true)) {
+            drain();
         }
     }
 
-    private long calculateMessageLength(AbstractWebsocketMessage msg) {
-        if (msg instanceof BinaryWebsocketMessage) {
-            return ((BinaryWebsocketMessage) msg).getBytes().capacity();
-        } else if (msg instanceof StringWebsocketMessage) {
-            return ((StringWebsocketMessage) msg).getString().length() * 2;
+    /**
+     * Takes the next message out of the queue, accounting for it.
+     */
+    private AbstractWebsocketMessage poll() {
+        AbstractWebsocketMessage msg = messagesToSend.poll();
+        if (msg != null) {
+            messagesToSendCount.decrementAndGet();
+            messagesToSendLength.addAndGet(-calculateMessageLength(msg));
         }
-
-        return 0;
+        return msg;
     }
 
     /**
-     * Internally sends the messages asynchronously.
-     * @param msg
+     * Sends the next message, or ends the drain loop if there is none. Must
+     * only be called by the thread that set {@link #isSendingMessage}.
      */
-    private void internalSendMessageAsync(AbstractWebsocketMessage msg) {
+    private void drain() {
+        AbstractWebsocketMessage msg = poll();
+        while (msg == null) {
+            isSendingMessage.set(false);
+            // A message could have been added after poll() but before
+            // the flag was reset, by a thread that saw the flag still set.
+            if (messagesToSend.isEmpty()
+                    || !isSendingMessage.compareAndSet(false, true)) {
+                return;
+            }
+            msg = poll();
+        }
+
         try {
             if (msg instanceof StringWebsocketMessage) {
-                StringWebsocketMessage sMsg = (StringWebsocketMessage) msg;
-                async.sendText(sMsg.getString(), sendHandler);
+                // If the next messages are String messages, too, we
+                // concatenate them to reduce TCP overhead (using ";" as
+                // separator). This is safe because this is the only
+                // thread taking messages out of the queue.
+                String s = ((StringWebsocketMessage) msg).getString();
+                if (messagesToSend.peek() instanceof StringWebsocketMessage) {
+                    coalesceBuffer.setLength(0);
+                    coalesceBuffer.append(s);
+                    while (messagesToSend.peek() instanceof StringWebsocketMessage) {
+                        coalesceBuffer.append(';').append(
+                                ((StringWebsocketMessage) poll()).getString());
+                    }
+                    s = coalesceBuffer.toString();
+                    if (coalesceBuffer.capacity() > 65536) {
+                        // Don't keep a buffer from a burst forever.
+                        coalesceBuffer.setLength(0);
+                        coalesceBuffer.trimToSize();
+                    }
+                }
+                async.sendText(s, sendHandler);
 
             } else if (msg instanceof BinaryWebsocketMessage) {
                 BinaryWebsocketMessage bMsg = (BinaryWebsocketMessage) msg;
                 async.sendBinary(bMsg.getBytes(), sendHandler);
 
             } else if (msg instanceof CloseWebsocketMessage) {
-                // Close the session.
-                session.close();
+                // Close the session. The drain loop ends here.
+                closeSession(null);
             }
-        } catch (IllegalStateException|IOException ex) {
+        } catch (IllegalStateException ex) {
             // Trying to write to the client when the session has
             // already been closed.
             // Ignore
         }
     }
 
+    private static long calculateMessageLength(AbstractWebsocketMessage msg) {
+        if (msg instanceof BinaryWebsocketMessage) {
+            return ((BinaryWebsocketMessage) msg).getBytes().remaining();
+        } else if (msg instanceof StringWebsocketMessage) {
+            return utf8Length(((StringWebsocketMessage) msg).getString());
+        }
+
+        return 0;
+    }
 
+    /**
+     * The length of the given String in UTF-8, without encoding it.
+     */
+    private static long utf8Length(String s) {
+        long length = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length += 1;
+                } else if (Character.isHighSurrogate(c)) {
+                    // 4 bytes for the pair, counted as 2 chars.
+                    length += 1;
+                } else if (!Character.isLowSurrogate(c)) {
+                    length += 2;
+                } else {
+                    length += 1;
+                }
+            }
+        }
+        return length;
+    }
 
     /**
      * SendHandler that will continue to send buffered messages.
@@ -197,32 +335,15 @@ public class Client {
         public void onResult(SendResult result) {
             if (!result.isOK()) {
                 // Message could not be sent. In this case, we don't
-                // set isSendingMessage to false because we must assume the connection
+                // end the drain loop because we must assume the connection
                 // broke (and onClose will be called), so we don't try to send
                 // other messages.
                 // As a precaution, we close the session (e.g. if a send timeout occured).
-                // TODO: session.close() blocks, while this handler shouldn't block.
-                // Ideally, there should be some abort() method that cancels the
-                // connection immediately...
-                try {
-                    session.close();
-                } catch (IOException ex) {
-                    // Ignore
-                }
+                closeSession(null);
+                return;
             }
-            synchronized (messagesToSend) {
-
-                if (!messagesToSend.isEmpty()) {
-                    AbstractWebsocketMessage msg = messagesToSend.remove();
-                    messagesToSendLength -= calculateMessageLength(msg);
 
-                    internalSendMessageAsync(msg);
-
-                } else {
-                    isSendingMessage = false;
-                }
-
-            }
+            drain();
         }
     };
 
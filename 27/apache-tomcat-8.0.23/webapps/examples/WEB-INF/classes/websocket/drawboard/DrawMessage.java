@@ -22,6 +22,7 @@ import java.awt.Graphics2D;
 import java.awt.geom.Arc2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
+import java.nio.ByteBuffer;
 
 /**
  * A message that represents a drawing action.
@@ -33,6 +34,22 @@ import java.awt.geom.Rectangle2D;
  */
 public final class DrawMessage {
 
+    /**
+     * Length of the binary representation written by
+     * {@link #writeTo(ByteBuffer)}:<br>
+     * 1 byte type (bits 0-2) and lastInChain flag (bit 7),<br>
+     * 4 bytes color (R, G, B, A),<br>
+     * 4 bytes thickness (float),<br>
+     * 16 bytes x1, y1, x2, y2 (float).<br><br>
+     *
+     * Floats are enough for canvas coordinates and avoid the parsing and
+     * formatting of decimal strings.
+     */
+    public static final int BINARY_LENGTH = 25;
+
+    private static final int LAST_IN_CHAIN_FLAG = 0x80;
+    private static final int TYPE_MASK = 0x07;
+
     private int type;
     private byte colorR, colorG, colorB, colorA;
     private double thickness;
@@ -209,6 +226,57 @@ public final class DrawMessage {
                 + (lastInChain ? "1" : "0");
     }
 
+    /**
+     * Writes the binary representation of this message at the current
+     * position of the given buffer, which must have at least
+     * {@link #BINARY_LENGTH} bytes remaining.
+     */
+    public void writeTo(ByteBuffer buf) {
+        buf.put((byte) (type | (lastInChain ? LAST_IN_CHAIN_FLAG : 0)));
+        buf.put(colorR).put(colorG).put(colorB).put(colorA);
+        buf.putFloat((float) thickness);
+        buf.putFloat((float) x1).putFloat((float) y1);
+        buf.putFloat((float) x2).putFloat((float) y2);
+    }
+
+    /**
+     * Reads a message written by {@link #writeTo(ByteBuffer)} from the
+     * current position of the given buffer, applying the same checks as
+     * {@link #parseFromString(String)}.
+     */
+    public static DrawMessage readFrom(ByteBuffer buf) throws ParseException {
+        if (buf.remaining() < BINARY_LENGTH)
+            throw new ParseException("Truncated message: " + buf.remaining()
+                    + " bytes");
+
+        int flags = buf.get() & 0xFF;
+        int type = flags & TYPE_MASK;
+        if (!(type >= 1 && type <= 4))
+            throw new ParseException("Invalid type: " + type);
+
+        byte colorR = buf.get(), colorG = buf.get(), colorB = buf.get(),
+                colorA = buf.get();
+
+        double thickness = buf.getFloat();
+        if (Double.isNaN(thickness) || thickness < 0 || thickness > 100)
+            throw new ParseException("Invalid thickness: " + thickness);
+
+        double x1 = readCoordinate(buf), y1 = readCoordinate(buf),
+                x2 = readCoordinate(buf), y2 = readCoordinate(buf);
+
+        return new DrawMessage(type, colorR, colorG, colorB, colorA,
+                thickness, x1, x2, y1, y2,
+                (flags & LAST_IN_CHAIN_FLAG) != 0);
+    }
+
+    private static double readCoordinate(ByteBuffer buf)
+            throws ParseException {
+        float coord = buf.getFloat();
+        if (Float.isNaN(coord))
+            throw new ParseException("Invalid coordinate: " + coord);
+        return coord;
+    }
+
     public static DrawMessage parseFromString(String str)
             throws ParseException {
 
@@ -28,10 +28,7 @@ public final class DrawboardContextListener implements ServletContextListener {
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-        // Shutdown our room.
-        Room room = DrawboardEndpoint.getRoom(false);
-        if (room != null) {
-            room.shutdown();
-        }
+        // Shutdown our rooms.
+        DrawboardEndpoint.getRooms().shutdown();
     }
 }
@@ -17,8 +17,12 @@
 package websocket.drawboard;
 
 import java.io.EOFException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
 import javax.websocket.MessageHandler;
@@ -36,28 +40,53 @@ public final class DrawboardEndpoint extends Endpoint {
     private static final Log log =
             LogFactory.getLog(DrawboardEndpoint.class);
 
+    /**
+     * WebSocket subprotocol for clients that send and receive DrawMessages
+     * as binary messages (see {@link DrawMessage#writeTo(ByteBuffer)})
+     * instead of comma-separated strings. Clients that don't request it
+     * get the string protocol.
+     */
+    public static final String BINARY_SUBPROTOCOL = "drawboard.binary";
+
 
     /**
-     * Our room where players can join.
+     * Name of the path parameter with the room id. Clients that connect
+     * without it join the {@link #DEFAULT_ROOM_ID} room.
      */
-    private static volatile Room room = null;
-    private static final Object roomLock = new Object();
+    public static final String ROOM_ID_PARAM = "roomId";
+    public static final String DEFAULT_ROOM_ID = "default";
 
-    public static Room getRoom(boolean create) {
-        if (create) {
-            if (room == null) {
-                synchronized (roomLock) {
-                    if (room == null) {
-                        room = new Room();
-                    }
-                }
-            }
-            return room;
-        } else {
-            return room;
-        }
+    /**
+     * The rooms where players can join, spread over one executor per core.
+     */
+    private static final RoomRegistry rooms =
+            new RoomRegistry(Runtime.getRuntime().availableProcessors());
+
+    public static RoomRegistry getRooms() {
+        return rooms;
     }
 
+    /**
+     * The maximum number of messages of this client that may wait to be
+     * handled by the room. A client that sends faster than that is
+     * disconnected.
+     */
+    private static final int MAX_PENDING_MESSAGES = 100;
+
+    /**
+     * The room of this Endpoint, or <code>null</code> if it couldn't join
+     * one.
+     */
+    private volatile Room room;
+
+    private volatile Client client;
+
+    /**
+     * The number of messages of this client submitted to the room that
+     * haven't been handled yet.
+     */
+    private final AtomicInteger pendingMessages = new AtomicInteger();
+
     /**
      * The player that is associated with this Endpoint and the current room.
      * Note that this variable is only accessed from the Room Thread.<br><br>
@@ -82,10 +111,35 @@ public final class DrawboardEndpoint extends Endpoint {
         // Set maximum messages size to 10.000 bytes.
         session.setMaxTextMessageBufferSize(10000);
         session.addMessageHandler(stringHandler);
-        final Client client = new Client(session);
+        // A binary message contains a single DrawMessage.
+        session.setMaxBinaryMessageBufferSize(
+                5 + DrawMessage.BINARY_LENGTH);
+        session.addMessageHandler(binaryHandler);
+        final Client client = new Client(session, rooms.getCloseExecutor());
+        this.client = client;
+
+        String roomId = session.getPathParameters().get(ROOM_ID_PARAM);
+        if (roomId == null) {
+            roomId = DEFAULT_ROOM_ID;
+        }
+        if (!RoomRegistry.isValidRoomId(roomId)) {
+            client.sendMessage(new StringWebsocketMessage(
+                    "0Invalid room id."));
+            client.close();
+            return;
+        }
+        final Room room;
+        try {
+            room = rooms.acquire(roomId);
+        } catch (IllegalStateException ex) {
+            client.sendMessage(new StringWebsocketMessage(
+                    "0" + ex.getLocalizedMessage()));
+            client.close();
+            return;
+        }
+        this.room = room;
 
-        final Room room = getRoom(true);
-        room.invokeAndWait(new Runnable() {
+        room.invoke(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -113,9 +167,9 @@ public final class DrawboardEndpoint extends Endpoint {
 
     @Override
     public void onClose(Session session, CloseReason closeReason) {
-        Room room = getRoom(false);
+        Room room = this.room;
         if (room != null) {
-            room.invokeAndWait(new Runnable() {
+            room.invoke(new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -134,6 +188,9 @@ public final class DrawboardEndpoint extends Endpoint {
                     }
                 }
             });
+
+            // Destroy the room if this was its last client.
+            rooms.release(room);
         }
     }
 
@@ -160,13 +217,53 @@ public final class DrawboardEndpoint extends Endpoint {
 
 
 
+    /**
+     * Submits the handling of a message of this client to the room. If the
+     * client has {@link #MAX_PENDING_MESSAGES} messages waiting, it sends
+     * faster than the room can handle them and is disconnected. If the room
+     * as a whole can't keep up, the message is discarded.
+     */
+    private void invokeForMessage(Room room, final Runnable task) {
+        if (pendingMessages.incrementAndGet() > MAX_PENDING_MESSAGES) {
+            pendingMessages.decrementAndGet();
+            Client client = this.client;
+            if (client != null) {
+                client.abort(new CloseReason(CloseCodes.VIOLATED_POLICY,
+                        "Too many pending messages"));
+            }
+            return;
+        }
+        boolean submitted = room.tryInvoke(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    pendingMessages.decrementAndGet();
+                }
+            }
+        });
+        if (!submitted) {
+            pendingMessages.decrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Room " + room.getId()
+                        + " is overloaded, discarding a message");
+            }
+        }
+    }
+
+
     private final MessageHandler.Whole<String> stringHandler =
             new MessageHandler.Whole<String>() {
 
         @Override
         public void onMessage(final String message) {
+            Room room = DrawboardEndpoint.this.room;
+            if (room == null) {
+                return;
+            }
             // Invoke handling of the message in the room.
-            room.invokeAndWait(new Runnable() {
+            invokeForMessage(room, new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -229,4 +326,45 @@ public final class DrawboardEndpoint extends Endpoint {
     };
 
 
+    private final MessageHandler.Whole<ByteBuffer> binaryHandler =
+            new MessageHandler.Whole<ByteBuffer>() {
+
+        @Override
+        public void onMessage(ByteBuffer message) {
+            // The only binary message the client sends is a draw message:
+            // the char '1', the Message ID (4 bytes) and the DrawMessage.
+            final long msgId;
+            final DrawMessage msg;
+            try {
+                if (message.get() != '1') {
+                    return;
+                }
+                msgId = message.getInt() & 0xFFFFFFFFL;
+                msg = DrawMessage.readFrom(message);
+            } catch (ParseException | BufferUnderflowException e) {
+                // Client sent invalid data
+                // Ignore, TODO: maybe close connection
+                return;
+            }
+
+            Room room = DrawboardEndpoint.this.room;
+            if (room == null) {
+                return;
+            }
+            invokeForMessage(room, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (player != null) {
+                            player.handleDrawMessage(msg, msgId);
+                        }
+                    } catch (RuntimeException ex) {
+                        log.error("Unexpected exception: " + ex.toString(), ex);
+                    }
+                }
+            });
+        }
+    };
+
+
 }
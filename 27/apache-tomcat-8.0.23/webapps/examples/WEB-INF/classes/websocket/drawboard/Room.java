@@ -16,30 +16,34 @@
  */
 package websocket.drawboard;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.imageio.ImageIO;
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
 
 import websocket.drawboard.wsmessages.BinaryWebsocketMessage;
 import websocket.drawboard.wsmessages.StringWebsocketMessage;
 
 /**
  * A Room represents a drawboard where a number of
- * users participate.<br><br>
+ * users participate. Rooms are created and destroyed on demand by the
+ * {@link RoomRegistry}.<br><br>
  *
  * Note: Instance methods should only be invoked by calling
- * {@link #invokeAndWait(Runnable)} to ensure access is correctly synchronized.
+ * {@link #invoke(Runnable)} to ensure they run on the room's executor.
  */
 public final class Room {
 
@@ -61,13 +65,23 @@ public final class Room {
          *      with the current Player's {@link Player#lastReceivedMessageId}
          *      and ",".<br>
          *      Multiple draw messages are concatenated with "|" as separator.
+         *      <br>
+         *      Clients using the binary protocol (see
+         *      {@link Client#usesBinaryProtocol()}) get a binary message
+         *      instead: the flag byte, the lastReceivedMessageId (4 bytes)
+         *      and the DrawMessages as written by
+         *      {@link DrawMessage#writeTo(ByteBuffer)}.
          */
         DRAW_MESSAGE('1'),
         /**
          * '2': ImageMessage: Contains number of current players in this room.
          *      After this message a Binary Websocket message will follow,
-         *      containing the current Room image as PNG.<br>
+         *      containing the latest {@link RoomSnapshot} of the Room image
+         *      as PNG tiles, and then a DRAW_MESSAGE with the DrawMessages drawn
+         *      since that snapshot (if there are any).<br>
          *      This is the first message that a Room sends to a new Player.
+         *      A Player whose client couldn't keep up with the DrawMessages
+         *      may get it again later.
          */
         IMAGE_MESSAGE('2'),
         /**
@@ -85,10 +99,35 @@ public final class Room {
     }
 
 
+    private static final Log log = LogFactory.getLog(Room.class);
+
+    private final String id;
+
+    /**
+     * The single-threaded executor (shard) on which all methods of this Room
+     * run. It is shared with other rooms, so a Room never blocks it.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of tasks submitted with {@link #tryInvoke(Runnable)}
+     * that may wait on the executor for this room. The executor's queue is
+     * unbounded and shared with other rooms, so without a limit the clients
+     * of one room could fill the memory and delay all other rooms.
+     */
+    private static final int MAX_PENDING_TASKS = 1000;
+
+    /**
+     * The number of tasks submitted with {@link #tryInvoke(Runnable)} that
+     * haven't finished yet.
+     */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
     /**
-     * The lock used to synchronize access to this Room.
+     * The executor on which the Room image is encoded as PNG. It is shared
+     * by all rooms.
      */
-    private final ReentrantLock roomLock = new ReentrantLock();
+    private final Executor snapshotExecutor;
 
     /**
      * Indicates if this room has already been shutdown.
@@ -97,35 +136,89 @@ public final class Room {
 
     /**
      * If <code>true</code>, outgoing DrawMessages will be buffered until the
-     * drawmessageBroadcastTimer ticks. Otherwise they will be sent
-     * immediately.
+     * broadcast tick. Otherwise they will be sent immediately.
      */
     private static final boolean BUFFER_DRAW_MESSAGES = true;
 
     /**
-     * A timer which sends buffered drawmessages to the client at once
-     * at a regular interval, to avoid sending a lot of very small
-     * messages which would cause TCP overhead and high CPU usage.
+     * Schedules the broadcast tick which sends buffered drawmessages to the
+     * client at once, to avoid sending a lot of very small messages which
+     * would cause TCP overhead and high CPU usage. It is shared by all rooms.
      */
-    private final Timer drawmessageBroadcastTimer = new Timer();
+    private final TickScheduler tickScheduler;
 
-    private static final int TIMER_DELAY = 30;
+    /**
+     * The delay of the broadcast tick. It starts at MIN_TICK_DELAY and is
+     * doubled, up to MAX_TICK_DELAY, while the ticks run late because the
+     * executor is busy, so that more DrawMessages are sent at once.
+     */
+    private static final int MIN_TICK_DELAY = 30;
+    private static final int MAX_TICK_DELAY = 240;
+    private int tickDelay = MIN_TICK_DELAY;
+
+    /**
+     * The scheduled broadcast tick. If null, then no tick is scheduled.
+     * A tick is only scheduled when a DrawMessage is buffered, so a Room
+     * where nobody draws doesn't cause any timer executions.
+     */
+    private ScheduledFuture<?> scheduledTick;
 
     /**
-     * The current active broadcast timer task. If null, then no Broadcast task is scheduled.
-     * The Task will be scheduled if the first player enters the Room, and
-     * cancelled if the last player exits the Room, to avoid unnecessary timer executions.
+     * When the scheduledTick is due, as {@link System#nanoTime()}.
      */
-    private TimerTask activeBroadcastTimerTask;
+    private long scheduledTickTime;
+
 
+    private static final int IMAGE_WIDTH = 900;
+    private static final int IMAGE_HEIGHT = 600;
 
     /**
      * The current image of the room drawboard. DrawMessages that are
      * received from Players will be drawn onto this image.
      */
-    private final BufferedImage roomImage =
-            new BufferedImage(900, 600, BufferedImage.TYPE_INT_RGB);
-    private final Graphics2D roomGraphics = roomImage.createGraphics();
+    private final TiledCanvas roomCanvas =
+            new TiledCanvas(IMAGE_WIDTH, IMAGE_HEIGHT);
+
+    /**
+     * The number of DrawMessages that have been drawn onto the roomCanvas.
+     */
+    private long drawnMessageCount = 0;
+
+    /**
+     * After this many DrawMessages have been drawn since the last snapshot,
+     * a new one is taken. Only the tiles they changed are encoded, so this
+     * can be small.
+     */
+    private static final int SNAPSHOT_INTERVAL = 100;
+
+    /**
+     * The snapshot of a room on which nothing has been drawn yet. All rooms
+     * start with it.
+     */
+    private static final RoomSnapshot EMPTY_SNAPSHOT =
+            RoomSnapshot.empty(IMAGE_WIDTH, IMAGE_HEIGHT);
+
+    /**
+     * The latest snapshot of the roomCanvas which is sent to new players.
+     */
+    private RoomSnapshot snapshot = EMPTY_SNAPSHOT;
+
+    /**
+     * If a snapshot is currently being encoded.
+     */
+    private boolean snapshotPending = false;
+
+    /**
+     * The DrawMessages that have been drawn onto the roomCanvas since the
+     * latest snapshot, in order. New players get them after the snapshot.
+     */
+    private final List<DrawMessage> replayLog = new ArrayList<>();
+
+    /**
+     * The replayLog serialized for the players that joined since it last
+     * changed. Null if it has to be created again.
+     */
+    private EncodedDrawMessages encodedReplayLog;
 
 
     /**
@@ -133,35 +226,39 @@ public final class Room {
      */
     private static final int MAX_PLAYER_COUNT = 100;
 
+    /**
+     * The largest distance (in pixels) by which the DrawMessages sent to a
+     * player that lags behind may deviate from the room image.
+     */
+    private static final double MAX_SIMPLIFY_TOLERANCE = 3.0;
+
+    /**
+     * How long a player's client may stay congested before it is
+     * disconnected. Until then the room keeps ticking to check if it has
+     * caught up.
+     */
+    private static final long MAX_CONGESTED_NANOS = TimeUnit.SECONDS.toNanos(30);
+
     /**
      * List of all currently joined players.
      */
     private final List<Player> players = new ArrayList<>();
 
+    /**
+     * DrawMessages that will be sent to all players by the
+     * broadcast tick. All players get the same messages, so they
+     * are buffered and serialized once for the room instead of per player.
+     */
+    private final List<DrawMessage> bufferedDrawMessages = new ArrayList<>();
 
 
-    public Room() {
-        roomGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // Clear the image with white background.
-        roomGraphics.setBackground(Color.WHITE);
-        roomGraphics.clearRect(0, 0, roomImage.getWidth(),
-                roomImage.getHeight());
-    }
 
-    private TimerTask createBroadcastTimerTask() {
-        return new TimerTask() {
-            @Override
-            public void run() {
-                invokeAndWait(new Runnable() {
-                    @Override
-                    public void run() {
-                        broadcastTimerTick();
-                    }
-                });
-            }
-        };
+    public Room(String id, Executor executor, Executor snapshotExecutor,
+            TickScheduler tickScheduler) {
+        this.id = id;
+        this.executor = executor;
+        this.snapshotExecutor = snapshotExecutor;
+        this.tickScheduler = tickScheduler;
     }
 
     /**
@@ -176,37 +273,48 @@ public final class Room {
 
         Player p = new Player(this, client);
 
+        // The buffered DrawMessages are already drawn onto the room image
+        // that the new player will get, so send them to the other players
+        // before adding the new one.
+        broadcastBufferedDrawMessages();
+
         // Broadcast to the other players that one player joined.
         broadcastRoomMessage(MessageType.PLAYER_CHANGED, "+");
 
         // Add the new player to the list.
         players.add(p);
 
-        // If currently no Broacast Timer Task is scheduled, then we need to create one.
-        if (activeBroadcastTimerTask == null) {
-            activeBroadcastTimerTask = createBroadcastTimerTask();
-            drawmessageBroadcastTimer.schedule(activeBroadcastTimerTask,
-                    TIMER_DELAY, TIMER_DELAY);
-        }
+        sendSnapshot(p);
 
-        // Send him the current number of players and the current room image.
-        String content = String.valueOf(players.size());
-        p.sendRoomMessage(MessageType.IMAGE_MESSAGE, content);
+        return p;
 
-        // Store image as PNG
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        try {
-            ImageIO.write(roomImage, "PNG", bout);
-        } catch (IOException e) { /* Should never happen */ }
+    }
 
+    /**
+     * Sends the given player the current number of players and the latest
+     * snapshot of the room image, followed by the DrawMessages that are
+     * missing in the snapshot.
+     * @param p
+     */
+    private void sendSnapshot(Player p) {
+        // The snapshot has already been encoded, so a lot of players
+        // joining at once doesn't hold up the room.
+        String content = String.valueOf(players.size());
+        p.sendRoomMessage(MessageType.IMAGE_MESSAGE, content);
 
         // Send the image as binary message.
         BinaryWebsocketMessage msg = new BinaryWebsocketMessage(
-                ByteBuffer.wrap(bout.toByteArray()));
+                snapshot.getImageMessage());
         p.getClient().sendMessage(msg);
 
-        return p;
-
+        // Then the DrawMessages that are missing in the snapshot, so that
+        // the player gets the current room image.
+        if (replayLog.size() > 0) {
+            if (encodedReplayLog == null) {
+                encodedReplayLog = new EncodedDrawMessages(replayLog);
+            }
+            p.writeDrawMessages(encodedReplayLog);
+        }
     }
 
     /**
@@ -217,18 +325,6 @@ public final class Room {
         boolean removed = players.remove(p);
         assert removed;
 
-        // If the last player left the Room, we need to cancel the Broadcast Timer Task.
-        if (players.size() == 0) {
-            // Cancel the task.
-            // Note that it can happen that the TimerTask is just about to execute (from
-            // the Timer thread) but waits until all players are gone (or even until a new
-            // player is added to the list), and then executes. This is OK. To prevent it,
-            // a TimerTask subclass would need to have some boolan "cancel" instance variable and
-            // query it in the invocation of Room#invokeAndWait.
-            activeBroadcastTimerTask.cancel();
-            activeBroadcastTimerTask = null;
-        }
-
         // Broadcast that one player is removed.
         broadcastRoomMessage(MessageType.PLAYER_CHANGED, "-");
     }
@@ -244,12 +340,85 @@ public final class Room {
         p.setLastReceivedMessageId(msgId);
 
         // Draw the RoomMessage onto our Room Image.
-        msg.draw(roomGraphics);
+        roomCanvas.draw(msg);
+        drawnMessageCount++;
+
+        replayLog.add(msg);
+        encodedReplayLog = null;
+        if (replayLog.size() >= SNAPSHOT_INTERVAL && !snapshotPending) {
+            takeSnapshot();
+        }
 
         // Broadcast the Draw Message.
         broadcastDrawMessage(msg);
     }
 
+    /**
+     * Copies the tiles of the roomCanvas that changed since the last
+     * snapshot and encodes them on the snapshotExecutor. Copying is fast
+     * compared to encoding, so this Room can go on drawing in the meantime.
+     */
+    private void takeSnapshot() {
+        final long sequence = drawnMessageCount;
+        final RoomSnapshot base = snapshot;
+        final BufferedImage[] changedTiles = roomCanvas.takeChangedTiles();
+
+        snapshotPending = true;
+        try {
+            snapshotExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    RoomSnapshot result = null;
+                    try {
+                        result = RoomSnapshot.encode(base, changedTiles,
+                                sequence);
+                    } catch (IOException | RuntimeException ex) {
+                        log.error("Could not encode snapshot of room " + id
+                                + ": " + ex.toString(), ex);
+                    }
+                    final RoomSnapshot newSnapshot = result;
+                    invoke(new Runnable() {
+                        @Override
+                        public void run() {
+                            installSnapshot(newSnapshot, changedTiles);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // The registry has been shut down.
+            snapshotPending = false;
+            roomCanvas.markChanged(changedTiles);
+        }
+    }
+
+    /**
+     * Makes the given snapshot the one that is sent to new players, and
+     * removes the DrawMessages it contains from the replayLog.
+     * @param newSnapshot the snapshot, or null if it could not be encoded
+     * @param changedTiles the tiles that were encoded for it
+     */
+    private void installSnapshot(RoomSnapshot newSnapshot,
+            BufferedImage[] changedTiles) {
+        snapshotPending = false;
+        if (newSnapshot == null) {
+            // Encode them again with the next snapshot.
+            roomCanvas.markChanged(changedTiles);
+            return;
+        }
+
+        // The replayLog starts after the old snapshot.
+        int included = (int) (newSnapshot.getSequence() - snapshot.getSequence());
+        replayLog.subList(0, included).clear();
+        encodedReplayLog = null;
+        snapshot = newSnapshot;
+
+        // More may have been drawn while it was encoded.
+        if (replayLog.size() >= SNAPSHOT_INTERVAL) {
+            takeSnapshot();
+        }
+    }
+
 
     /**
      * Broadcasts the given drawboard message to all connected players.<br>
@@ -269,129 +438,219 @@ public final class Room {
 
     /**
      * Broadcast the given DrawMessage. This will buffer the message
-     * and the {@link #drawmessageBroadcastTimer} will broadcast them
-     * at a regular interval, prefixing them with the player's current
+     * and the next broadcast tick will broadcast them,
+     * prefixing them with the player's current
      * {@link Player#lastReceivedMessageId}.
      * @param msg
      */
     private void broadcastDrawMessage(DrawMessage msg) {
         if (!BUFFER_DRAW_MESSAGES) {
-            String msgStr = msg.toString();
+            EncodedDrawMessages encoded = new EncodedDrawMessages(
+                    Collections.singletonList(msg));
 
             for (Player p : players) {
-                String s = String.valueOf(p.getLastReceivedMessageId())
-                        + "," + msgStr;
-                p.sendRoomMessage(MessageType.DRAW_MESSAGE, s);
+                p.sendDrawMessages(encoded);
             }
         } else {
-            for (Player p : players) {
-                p.getBufferedDrawMessages().add(msg);
+            bufferedDrawMessages.add(msg);
+            if (scheduledTick == null) {
+                scheduleTick();
             }
         }
     }
 
+    private void scheduleTick() {
+        scheduledTickTime = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(tickDelay);
+        scheduledTick = tickScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                invoke(new Runnable() {
+                    @Override
+                    public void run() {
+                        tick();
+                    }
+                });
+            }
+        }, tickDelay);
+    }
 
     /**
-     * Tick handler for the broadcastTimer.
+     * Runs the scheduledTick, adapting the delay of the next one.
      */
-    private void broadcastTimerTick() {
-        // For each Player, send all per Player buffered
-        // DrawMessages, prefixing each DrawMessage with the player's
-        // lastReceivedMessageId.
-        // Multiple messages are concatenated with "|".
+    private void tick() {
+        scheduledTick = null;
+
+        long lag = System.nanoTime() - scheduledTickTime;
+        tickScheduler.recordLag(lag);
+        if (lag > TimeUnit.MILLISECONDS.toNanos(tickDelay)) {
+            tickDelay = Math.min(tickDelay * 2, MAX_TICK_DELAY);
+        } else if (tickDelay > MIN_TICK_DELAY) {
+            tickDelay = Math.max(tickDelay / 2, MIN_TICK_DELAY);
+        }
 
-        for (Player p : players) {
+        broadcastBufferedDrawMessages();
 
-            StringBuilder sb = new StringBuilder();
-            List<DrawMessage> drawMessages = p.getBufferedDrawMessages();
+        // Players whose client was congested get what they missed once it
+        // has caught up, so keep ticking until then (at most
+        // MAX_CONGESTED_NANOS, see Player#catchUp()).
+        boolean lagging = false;
+        for (Player p : players) {
+            if (!p.catchUp()) {
+                lagging = true;
+            }
+        }
+        if (lagging && scheduledTick == null) {
+            scheduleTick();
+        }
+    }
 
-            if (drawMessages.size() > 0) {
-                for (int i = 0; i < drawMessages.size(); i++) {
-                    DrawMessage msg = drawMessages.get(i);
 
-                    String s = String.valueOf(p.getLastReceivedMessageId())
-                            + "," + msg.toString();
-                    if (i > 0)
-                        sb.append("|");
+    /**
+     * Sends the buffered DrawMessages. Called by the broadcast tick.
+     */
+    private void broadcastBufferedDrawMessages() {
+        // Send the buffered DrawMessages to each Player, with the
+        // player's lastReceivedMessageId. The messages are serialized only
+        // once for all players.
 
-                    sb.append(s);
-                }
-                drawMessages.clear();
+        if (bufferedDrawMessages.size() > 0) {
+            EncodedDrawMessages encoded =
+                    new EncodedDrawMessages(bufferedDrawMessages);
 
-                p.sendRoomMessage(MessageType.DRAW_MESSAGE, sb.toString());
+            for (Player p : players) {
+                p.sendDrawMessages(encoded);
             }
+            bufferedDrawMessages.clear();
         }
     }
 
-    /**
-     * A list of cached {@link Runnable}s to prevent recursive invocation of Runnables
-     * by one thread. This variable is only used by one thread at a time and then
-     * set to <code>null</code>.
-     */
-    private List<Runnable> cachedRunnables = null;
 
     /**
-     * Submits the given Runnable to the Room Executor and waits until it
-     * has been executed. Currently, this simply means that the Runnable
-     * will be run directly inside of a synchronized() block.<br>
-     * Note that if a runnable recursively calls invokeAndWait() with another
-     * runnable on this Room, it will not be executed recursively, but instead
-     * cached until the original runnable is finished, to keep the behavior of
-     * using a Executor.
-     * @param task
+     * The DrawMessages of one broadcast, serialized once and shared by all
+     * players. Each format is only created if a player uses it.
      */
-    public void invokeAndWait(Runnable task)  {
+    private static final class EncodedDrawMessages {
+
+        private final List<DrawMessage> msgs;
+        private ByteBuffer binary;
+        private String[] strings;
 
-        // Check if the current thread already holds a lock on this room.
-        // If yes, then we must not directly execute the Runnable but instead
-        // cache it until the original invokeAndWait() has finished.
-        if (roomLock.isHeldByCurrentThread()) {
+        private EncodedDrawMessages(List<DrawMessage> msgs) {
+            this.msgs = msgs;
+        }
 
-            if (cachedRunnables == null) {
-                cachedRunnables = new ArrayList<>();
+        /**
+         * The DrawMessages as written by
+         * {@link DrawMessage#writeTo(ByteBuffer)}. Use a duplicate to read
+         * it, as it is shared.
+         */
+        private ByteBuffer getBinary() {
+            if (binary == null) {
+                binary = ByteBuffer.allocate(
+                        msgs.size() * DrawMessage.BINARY_LENGTH);
+                for (int i = 0; i < msgs.size(); i++) {
+                    msgs.get(i).writeTo(binary);
+                }
+                binary.flip();
             }
-            cachedRunnables.add(task);
+            return binary;
+        }
 
-        } else {
+        private String[] getStrings() {
+            if (strings == null) {
+                strings = new String[msgs.size()];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = msgs.get(i).toString();
+                }
+            }
+            return strings;
+        }
+    }
 
-            roomLock.lock();
-            try {
-                // Explicitely overwrite value to ensure data consistency in
-                // current thread
-                cachedRunnables = null;
+    public String getId() {
+        return id;
+    }
 
-                if (!closed) {
-                    task.run();
-                }
+    /**
+     * Submits the given Runnable to the Room Executor. Runnables of one Room
+     * run one at a time and in the order they were submitted, so they don't
+     * need further synchronization. A Runnable that invokes another one on
+     * this Room doesn't run it recursively: it runs after the current one has
+     * finished.
+     * @param task
+     */
+    public void invoke(final Runnable task) {
+        submit(task, false);
+    }
+
+    /**
+     * Like {@link #invoke(Runnable)}, but only if fewer than
+     * {@link #MAX_PENDING_TASKS} tasks submitted this way are waiting for
+     * this room. Used for the messages of the clients, so that the room sheds
+     * them when it can't keep up. Tasks that must not be lost, like joining
+     * and leaving the room, use {@link #invoke(Runnable)}.
+     * @param task
+     * @return <code>false</code> if the task was discarded
+     */
+    public boolean tryInvoke(Runnable task) {
+        if (pendingTasks.incrementAndGet() > MAX_PENDING_TASKS) {
+            pendingTasks.decrementAndGet();
+            return false;
+        }
+        submit(task, true);
+        return true;
+    }
 
-                // Run the cached runnables.
-                if (cachedRunnables != null) {
-                    for (int i = 0; i < cachedRunnables.size(); i++) {
+    private void submit(final Runnable task, final boolean counted) {
+        if (closed) {
+            if (counted) {
+                pendingTasks.decrementAndGet();
+            }
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
                         if (!closed) {
-                            cachedRunnables.get(i).run();
+                            task.run();
+                        }
+                    } catch (RuntimeException ex) {
+                        // Don't let one task kill the shard thread that is
+                        // shared with other rooms.
+                        log.error("Unexpected exception in room " + id + ": "
+                                + ex.toString(), ex);
+                    } finally {
+                        if (counted) {
+                            pendingTasks.decrementAndGet();
                         }
                     }
-                    cachedRunnables = null;
                 }
-
-            } finally {
-                roomLock.unlock();
+            });
+        } catch (RejectedExecutionException ex) {
+            // The registry has been shut down.
+            if (counted) {
+                pendingTasks.decrementAndGet();
             }
-
         }
-
     }
 
     /**
-     * Shuts down the roomExecutor and the drawmessageBroadcastTimer.
+     * Shuts down this Room and cancels its broadcast tick. Tasks submitted
+     * afterwards are ignored.
      */
     public void shutdown() {
-        invokeAndWait(new Runnable() {
+        invoke(new Runnable() {
             @Override
             public void run() {
                 closed = true;
-                drawmessageBroadcastTimer.cancel();
-                roomGraphics.dispose();
+                if (scheduledTick != null) {
+                    scheduledTick.cancel(false);
+                    scheduledTick = null;
+                }
+                roomCanvas.dispose();
             }
         });
     }
@@ -420,14 +679,29 @@ public final class Room {
         private final Client client;
 
         /**
-         * Buffered DrawMessages that will be sent by a Timer.
+         * DrawMessages that were held back because the client was
+         * congested.
          */
-        private final List<DrawMessage> bufferedDrawMessages =
-                new ArrayList<>();
+        private final List<DrawMessage> heldDrawMessages = new ArrayList<>();
 
-        private List<DrawMessage> getBufferedDrawMessages() {
-            return bufferedDrawMessages;
-        }
+        /**
+         * If this player fell too far behind and gets the current snapshot
+         * once the client has caught up.
+         */
+        private boolean resyncPending = false;
+
+        /**
+         * Since when (System.nanoTime()) the client has been congested at
+         * the ticks, if {@link #congested}.
+         */
+        private boolean congested = false;
+        private long congestedSince;
+
+        /**
+         * If the client stayed congested for too long and is being
+         * disconnected. Nothing is sent to it anymore.
+         */
+        private boolean dropped = false;
 
         private Player(Room room, Client client) {
             this.room = room;
@@ -473,6 +747,122 @@ public final class Room {
         }
 
 
+        /**
+         * Sends the given DrawMessages to this player, or holds them back if
+         * the client is congested. Held DrawMessages are sent (simplified)
+         * by {@link #catchUp()}. If there are so many that sending them
+         * would cost more than a resync (the room image and the replayLog
+         * after it), they are dropped and the player gets the current
+         * snapshot instead.
+         * @param encoded
+         */
+        private void sendDrawMessages(EncodedDrawMessages encoded) {
+            if (resyncPending || dropped) {
+                // The snapshot will contain them, or the client is being
+                // disconnected.
+                return;
+            }
+            if (heldDrawMessages.isEmpty() && !client.isCongested()) {
+                writeDrawMessages(encoded);
+                return;
+            }
+
+            heldDrawMessages.addAll(encoded.msgs);
+            long resyncLength = snapshot.getImageMessage().remaining()
+                    + (long) replayLog.size() * DrawMessage.BINARY_LENGTH;
+            if ((long) heldDrawMessages.size() * DrawMessage.BINARY_LENGTH
+                    > resyncLength) {
+                heldDrawMessages.clear();
+                resyncPending = true;
+            }
+        }
+
+        /**
+         * Sends the DrawMessages that were held back, or the current
+         * snapshot, if the client is no longer congested. A client that
+         * stays congested for longer than {@link #MAX_CONGESTED_NANOS} is
+         * disconnected, so that the room doesn't keep ticking for it.
+         * @return <code>true</code> if this player doesn't need more ticks
+         */
+        private boolean catchUp() {
+            if (dropped || (!resyncPending && heldDrawMessages.isEmpty())) {
+                congested = false;
+                return true;
+            }
+            if (client.isCongested()) {
+                long now = System.nanoTime();
+                if (!congested) {
+                    congested = true;
+                    congestedSince = now;
+                } else if (now - congestedSince > MAX_CONGESTED_NANOS) {
+                    drop();
+                    return true;
+                }
+                return false;
+            }
+            congested = false;
+
+            if (resyncPending) {
+                resyncPending = false;
+                sendSnapshot(this);
+            } else {
+                // The further behind, the coarser.
+                double tolerance = Math.min(MAX_SIMPLIFY_TOLERANCE,
+                        0.5 + heldDrawMessages.size() / 200.0);
+                writeDrawMessages(new EncodedDrawMessages(
+                        StrokeSimplifier.simplify(heldDrawMessages, tolerance)));
+                heldDrawMessages.clear();
+            }
+            return true;
+        }
+
+        private void drop() {
+            dropped = true;
+            resyncPending = false;
+            heldDrawMessages.clear();
+            if (log.isDebugEnabled()) {
+                log.debug("Disconnecting a player of room " + id
+                        + " that stayed congested");
+            }
+            client.abort(new CloseReason(CloseCodes.VIOLATED_POLICY,
+                    "Client can't keep up"));
+        }
+
+        /**
+         * Sends the given DrawMessages as one DRAW_MESSAGE with this
+         * player's lastReceivedMessageId. Only this id is written per
+         * player, the DrawMessages are copied from the shared encoding.
+         * @param encoded
+         */
+        private void writeDrawMessages(EncodedDrawMessages encoded) {
+            if (client.usesBinaryProtocol()) {
+                ByteBuffer payload = encoded.getBinary().duplicate();
+                ByteBuffer buf = ByteBuffer.allocate(5 + payload.remaining());
+                buf.put((byte) MessageType.DRAW_MESSAGE.flag);
+                buf.putInt((int) lastReceivedMessageId);
+                buf.put(payload);
+                buf.flip();
+
+                client.sendMessage(new BinaryWebsocketMessage(buf));
+
+            } else {
+                // Each message is prefixed with the
+                // lastReceivedMessageId, and multiple messages are
+                // concatenated with "|".
+                String[] strings = encoded.getStrings();
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < strings.length; i++) {
+                    if (i > 0)
+                        sb.append("|");
+
+                    sb.append(lastReceivedMessageId).append(",")
+                            .append(strings[i]);
+                }
+
+                sendRoomMessage(MessageType.DRAW_MESSAGE, sb.toString());
+            }
+        }
+
         /**
          * Sends the given room message.
          * @param type
@@ -0,0 +1,276 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package websocket.drawboard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * Creates Rooms on demand and destroys them when their last client has
+ * left.<br><br>
+ *
+ * Each Room is bound to one of a fixed number of single-threaded executors
+ * (shards), normally one per core, so that different rooms are handled in
+ * parallel while all tasks of one room still run one at a time. A new room
+ * goes to the shard with the fewest rooms.<br><br>
+ *
+ * Every {@link #STATS_INTERVAL_MILLIS} the number of broadcast ticks and how
+ * late they ran in that interval are logged at INFO, if there were any. A
+ * growing lag means the shards can't keep up with their rooms.
+ */
+public final class RoomRegistry {
+
+    private static final Log log = LogFactory.getLog(RoomRegistry.class);
+
+    /**
+     * Room ids that are accepted in the endpoint path.
+     */
+    private static final Pattern ROOM_ID = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+    /**
+     * The maximum number of rooms that can exist at the same time.
+     */
+    private static final int MAX_ROOM_COUNT = 1000;
+
+    private static final long STATS_INTERVAL_MILLIS = 60000;
+
+    private final ExecutorService[] shards;
+    private final int[] roomsPerShard;
+
+    /**
+     * Encodes the snapshots of all rooms, so that the shards don't have to.
+     */
+    private final ExecutorService snapshotExecutor;
+
+    /**
+     * Schedules the broadcast ticks of all rooms.
+     */
+    private final TickScheduler tickScheduler;
+
+    /**
+     * Closes the sessions of all clients (see {@link Client}), because
+     * Session.close() may block. Its threads end when they are idle.
+     */
+    private final ThreadPoolExecutor closeExecutor;
+
+    /**
+     * All current rooms by id. Guarded by <code>this</code>.
+     */
+    private final Map<String, RoomEntry> rooms = new HashMap<>();
+
+    private boolean closed = false;
+
+    /**
+     * The tick totals at the previous stats report. Only accessed by the
+     * stats task.
+     */
+    private long reportedTickCount = 0;
+    private long reportedLagNanos = 0;
+
+    public RoomRegistry(int shardCount) {
+        shards = new ExecutorService[shardCount];
+        roomsPerShard = new int[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = Executors.newSingleThreadExecutor(
+                    new ShardThreadFactory("drawboard-shard-" + i + "-"));
+        }
+        snapshotExecutor = Executors.newFixedThreadPool(
+                Math.max(1, shardCount / 2),
+                new ShardThreadFactory("drawboard-snapshot-"));
+        tickScheduler = new TickScheduler(shardCount,
+                new ShardThreadFactory("drawboard-tick-"));
+        closeExecutor = new ThreadPoolExecutor(shardCount, shardCount,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ShardThreadFactory("drawboard-close-"));
+        closeExecutor.allowCoreThreadTimeOut(true);
+        tickScheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                logStats();
+            }
+        }, STATS_INTERVAL_MILLIS);
+    }
+
+    public static boolean isValidRoomId(String id) {
+        return id != null && ROOM_ID.matcher(id).matches();
+    }
+
+    /**
+     * Returns the room with the given id, creating it if needed, and counts
+     * one more client for it. Every call must be followed by a call to
+     * {@link #release(Room)} when the client leaves.
+     * @param id
+     * @throws IllegalStateException if the maximum number of rooms has been
+     *         reached or the registry has been shut down
+     */
+    public synchronized Room acquire(String id) {
+        if (closed) {
+            throw new IllegalStateException("The drawboard has been shut down.");
+        }
+        RoomEntry entry = rooms.get(id);
+        if (entry == null) {
+            if (rooms.size() >= MAX_ROOM_COUNT) {
+                throw new IllegalStateException("Maximum room count ("
+                        + MAX_ROOM_COUNT + ") has been reached.");
+            }
+            int shard = leastLoadedShard();
+            roomsPerShard[shard]++;
+            entry = new RoomEntry(new Room(id, shards[shard], snapshotExecutor,
+                    tickScheduler), shard);
+            rooms.put(id, entry);
+        }
+        entry.clients++;
+        return entry.room;
+    }
+
+    /**
+     * Counts one client less for the given room, and shuts the room down if
+     * it was the last one.
+     * @param room
+     */
+    public synchronized void release(Room room) {
+        RoomEntry entry = rooms.get(room.getId());
+        if (entry == null || entry.room != room) {
+            // Already removed by shutdown().
+            return;
+        }
+        if (--entry.clients == 0) {
+            rooms.remove(room.getId());
+            roomsPerShard[entry.shard]--;
+            room.shutdown();
+        }
+    }
+
+    public synchronized int getRoomCount() {
+        return rooms.size();
+    }
+
+    public TickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+
+    public Executor getCloseExecutor() {
+        return closeExecutor;
+    }
+
+    private void logStats() {
+        long tickCount = tickScheduler.getTickCount();
+        long lagNanos = tickScheduler.getTotalLagNanos();
+        double maxLagMillis = tickScheduler.getAndResetIntervalMaxLagMillis();
+        long ticks = tickCount - reportedTickCount;
+        double averageLagMillis = ticks == 0 ? 0
+                : (lagNanos - reportedLagNanos) / (ticks * 1000000.0);
+        reportedTickCount = tickCount;
+        reportedLagNanos = lagNanos;
+        if (ticks > 0 && log.isInfoEnabled()) {
+            log.info("Broadcast ticks in the last "
+                    + STATS_INTERVAL_MILLIS / 1000 + " s: " + ticks
+                    + ", average lag " + String.format("%.1f", Double.valueOf(averageLagMillis))
+                    + " ms, max lag " + String.format("%.1f", Double.valueOf(maxLagMillis))
+                    + " ms, " + getRoomCount() + " rooms");
+        }
+    }
+
+    private int leastLoadedShard() {
+        int shard = 0;
+        for (int i = 1; i < roomsPerShard.length; i++) {
+            if (roomsPerShard[i] < roomsPerShard[shard]) {
+                shard = i;
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Shuts down all rooms and waits a few seconds for the shards to finish
+     * their pending tasks.
+     */
+    public void shutdown() {
+        List<RoomEntry> entries;
+        synchronized (this) {
+            closed = true;
+            entries = new ArrayList<>(rooms.values());
+            rooms.clear();
+        }
+        for (RoomEntry entry : entries) {
+            entry.room.shutdown();
+        }
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        snapshotExecutor.shutdownNow();
+        tickScheduler.shutdown();
+        // Let the pending closes finish; the threads are daemons.
+        closeExecutor.shutdown();
+        try {
+            for (ExecutorService shard : shards) {
+                shard.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Broadcast ticks: " + tickScheduler.getTickCount()
+                    + ", average lag " + tickScheduler.getAverageLagMillis()
+                    + " ms, max lag " + tickScheduler.getMaxLagMillis() + " ms");
+        }
+    }
+
+
+    private static final class RoomEntry {
+        private final Room room;
+        private final int shard;
+        private int clients = 0;
+
+        private RoomEntry(Room room, int shard) {
+            this.room = room;
+            this.shard = shard;
+        }
+    }
+
+    private static final class ShardThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private ShardThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            // A shard only gets a new thread if the previous one died.
+            Thread t = new Thread(r, namePrefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
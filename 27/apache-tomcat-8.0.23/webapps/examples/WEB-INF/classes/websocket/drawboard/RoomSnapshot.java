@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package websocket.drawboard;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The image of a Room, encoded tile by tile as PNG (see
+ * {@link TiledCanvas}), together with the number of DrawMessages that had
+ * been drawn onto it. A Room sends its latest snapshot to a new player,
+ * followed by the DrawMessages drawn since then, so that it doesn't need to
+ * encode its image for every player that joins.<br><br>
+ *
+ * A new snapshot is created from the previous one, and only the tiles that
+ * have changed since then are encoded again.<br><br>
+ *
+ * The image message that is sent to the players consists of:<br>
+ * the width, height and tile size of the image (2 bytes each),<br>
+ * the number of tiles that follow (2 bytes),<br>
+ * and for each tile its column and row (2 bytes each), its length
+ * (4 bytes) and the PNG data.<br>
+ * Tiles on which nothing has been drawn yet are left out; they are white.
+ * <br><br>
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class RoomSnapshot {
+
+    private static final int HEADER_LENGTH = 8;
+    private static final int TILE_HEADER_LENGTH = 8;
+
+    private final long sequence;
+    private final int width;
+    private final int height;
+
+    /**
+     * The PNG data of each tile by tile index, or null if nothing has been
+     * drawn on it.
+     */
+    private final byte[][] tiles;
+
+    private final ByteBuffer imageMessage;
+
+    private RoomSnapshot(long sequence, int width, int height,
+            byte[][] tiles) {
+        this.sequence = sequence;
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+        this.imageMessage = createImageMessage().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the snapshot of an image on which nothing has been drawn yet.
+     * @param width
+     * @param height
+     */
+    public static RoomSnapshot empty(int width, int height) {
+        return new RoomSnapshot(0, width, height, new byte[
+                TiledCanvas.getTileCount(width)
+                * TiledCanvas.getTileCount(height)][]);
+    }
+
+    /**
+     * Creates a new snapshot from the given one by encoding the changed
+     * tiles as PNG. This takes a while, so it should not be called on the
+     * Room's executor.
+     * @param base the previous snapshot
+     * @param changedTiles the tiles returned by
+     *        {@link TiledCanvas#takeChangedTiles()}
+     * @param sequence the number of DrawMessages drawn onto the image
+     * @throws IOException if a tile could not be encoded
+     */
+    public static RoomSnapshot encode(RoomSnapshot base,
+            BufferedImage[] changedTiles, long sequence) throws IOException {
+        byte[][] tiles = base.tiles.clone();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        for (int i = 0; i < changedTiles.length; i++) {
+            if (changedTiles[i] != null) {
+                bout.reset();
+                ImageIO.write(changedTiles[i], "PNG", bout);
+                tiles[i] = bout.toByteArray();
+            }
+        }
+        return new RoomSnapshot(sequence, base.width, base.height, tiles);
+    }
+
+    private ByteBuffer createImageMessage() {
+        int length = HEADER_LENGTH;
+        int tileCount = 0;
+        for (byte[] tile : tiles) {
+            if (tile != null) {
+                length += TILE_HEADER_LENGTH + tile.length;
+                tileCount++;
+            }
+        }
+
+        int tilesX = TiledCanvas.getTileCount(width);
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.putShort((short) width).putShort((short) height);
+        buf.putShort((short) TiledCanvas.TILE_SIZE);
+        buf.putShort((short) tileCount);
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                buf.putShort((short) (i % tilesX));
+                buf.putShort((short) (i / tilesX));
+                buf.putInt(tiles[i].length);
+                buf.put(tiles[i]);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * The number of DrawMessages that had been drawn onto the room image
+     * when this snapshot was taken.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the image message. Every call returns a new buffer (sharing
+     * the same data), so it can be sent to a player without affecting
+     * others.
+     */
+    public ByteBuffer getImageMessage() {
+        return imageMessage.duplicate();
+    }
+}
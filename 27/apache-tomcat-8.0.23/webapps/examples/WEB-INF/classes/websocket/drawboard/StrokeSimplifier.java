@@ -0,0 +1,151 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package websocket.drawboard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reduces the number of DrawMessages that are sent to a client which can't
+ * keep up: consecutive brush segments of the same chain (the same stroke
+ * of a player) are joined into a polyline, which is simplified with the
+ * Ramer-Douglas-Peucker algorithm and sent as fewer, longer segments.<br>
+ * The result looks slightly coarser than the room image; a client which
+ * joins or is resynchronized gets the exact image again.
+ */
+public final class StrokeSimplifier {
+
+    private static final int TYPE_BRUSH = 1;
+
+    private StrokeSimplifier() {
+        // Utility class
+    }
+
+    /**
+     * Returns the given DrawMessages with each run of consecutive brush
+     * segments simplified.
+     * @param msgs the DrawMessages in the order they were drawn
+     * @param tolerance the maximum distance (in pixels) between a removed
+     *        point and the simplified polyline
+     */
+    public static List<DrawMessage> simplify(List<DrawMessage> msgs,
+            double tolerance) {
+        List<DrawMessage> result = new ArrayList<>(msgs.size());
+        int i = 0;
+        while (i < msgs.size()) {
+            int end = i + 1;
+            while (end < msgs.size()
+                    && continuesChain(msgs.get(end - 1), msgs.get(end))) {
+                end++;
+            }
+            if (end - i > 1) {
+                simplifyChain(msgs.subList(i, end), tolerance, result);
+            } else {
+                result.add(msgs.get(i));
+            }
+            i = end;
+        }
+        return result;
+    }
+
+    /**
+     * Returns if <code>next</code> is the brush segment that follows
+     * <code>prev</code> in the same chain.
+     */
+    private static boolean continuesChain(DrawMessage prev, DrawMessage next) {
+        return prev.getType() == TYPE_BRUSH && next.getType() == TYPE_BRUSH
+                && !prev.isLastInChain()
+                && next.getX1() == prev.getX2() && next.getY1() == prev.getY2()
+                && next.getThickness() == prev.getThickness()
+                && next.getColorR() == prev.getColorR()
+                && next.getColorG() == prev.getColorG()
+                && next.getColorB() == prev.getColorB()
+                && next.getColorA() == prev.getColorA();
+    }
+
+    private static void simplifyChain(List<DrawMessage> chain,
+            double tolerance, List<DrawMessage> result) {
+        // The points of the polyline: the start of the first segment and the
+        // end of each segment.
+        int count = chain.size() + 1;
+        double[] xs = new double[count], ys = new double[count];
+        xs[0] = chain.get(0).getX1();
+        ys[0] = chain.get(0).getY1();
+        for (int i = 0; i < chain.size(); i++) {
+            xs[i + 1] = chain.get(i).getX2();
+            ys[i + 1] = chain.get(i).getY2();
+        }
+
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        // Ramer-Douglas-Peucker with an explicit stack of ranges instead of
+        // recursion, as a chain can be long.
+        int[] stack = new int[2 * count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            int farthest = -1;
+            double maxDistance = tolerance;
+            for (int i = first + 1; i < last; i++) {
+                double distance = distanceToSegment(xs[i], ys[i],
+                        xs[first], ys[first], xs[last], ys[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest != -1) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        DrawMessage style = chain.get(0);
+        int from = 0;
+        for (int i = 1; i < count; i++) {
+            if (keep[i]) {
+                result.add(new DrawMessage(TYPE_BRUSH, style.getColorR(),
+                        style.getColorG(), style.getColorB(),
+                        style.getColorA(), style.getThickness(),
+                        xs[from], xs[i], ys[from], ys[i],
+                        i == count - 1 && chain.get(chain.size() - 1)
+                                .isLastInChain()));
+                from = i;
+            }
+        }
+    }
+
+    private static double distanceToSegment(double x, double y,
+            double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0
+                : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy)
+                        / lengthSq));
+        double px = x1 + t * dx - x, py = y1 + t * dy - y;
+        return Math.sqrt(px * px + py * py);
+    }
+}
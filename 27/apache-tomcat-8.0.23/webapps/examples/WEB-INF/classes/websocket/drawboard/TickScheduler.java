@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package websocket.drawboard;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules the broadcast ticks of all rooms on one shared pool, instead of
+ * a Timer thread per room.<br><br>
+ *
+ * A tick only hands the work over to the Room's executor, so a few threads
+ * are enough for any number of rooms. The Rooms report how late their ticks
+ * actually ran (see {@link #recordLag(long)}), which includes waiting for
+ * a busy shard. Besides the totals, the longest lag is kept per interval,
+ * so that it can be reported while the drawboard runs (see
+ * {@link RoomRegistry}).
+ */
+public final class TickScheduler {
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final AtomicLong tickCount = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private final AtomicLong intervalMaxLagNanos = new AtomicLong();
+
+    public TickScheduler(int threadCount, ThreadFactory threadFactory) {
+        executor = new ScheduledThreadPoolExecutor(threadCount, threadFactory);
+        // Ticks of rooms that are shut down shouldn't stay in the queue.
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Runs the given tick once after the given delay.
+     * @param tick
+     * @param delayMillis
+     * @return the scheduled tick, or null if the scheduler has been shut
+     *         down
+     */
+    public ScheduledFuture<?> schedule(Runnable tick, long delayMillis) {
+        try {
+            return executor.schedule(tick, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs the given task repeatedly, every periodMillis.
+     * @param task
+     * @param periodMillis
+     * @return the scheduled task, or null if the scheduler has been shut
+     *         down
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task,
+            long periodMillis) {
+        try {
+            return executor.scheduleAtFixedRate(task, periodMillis,
+                    periodMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Records that a tick ran the given time after it was due.
+     * @param lagNanos
+     */
+    public void recordLag(long lagNanos) {
+        if (lagNanos < 0) {
+            lagNanos = 0;
+        }
+        tickCount.incrementAndGet();
+        totalLagNanos.addAndGet(lagNanos);
+        updateMax(maxLagNanos, lagNanos);
+        updateMax(intervalMaxLagNanos, lagNanos);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())
+                && !max.compareAndSet(current, value)) {
+            // Retry
+        }
+    }
+
+    public long getTickCount() {
+        return tickCount.get();
+    }
+
+    /**
+     * The average time that the ticks ran after they were due.
+     */
+    public double getAverageLagMillis() {
+        long count = tickCount.get();
+        return count == 0 ? 0 : totalLagNanos.get() / (count * 1000000.0);
+    }
+
+    /**
+     * The sum of the times that the ticks ran after they were due.
+     */
+    public long getTotalLagNanos() {
+        return totalLagNanos.get();
+    }
+
+    /**
+     * The longest time that a tick ran after it was due.
+     */
+    public double getMaxLagMillis() {
+        return maxLagNanos.get() / 1000000.0;
+    }
+
+    /**
+     * The longest time that a tick ran after it was due since the previous
+     * call of this method.
+     */
+    public double getAndResetIntervalMaxLagMillis() {
+        return intervalMaxLagNanos.getAndSet(0) / 1000000.0;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
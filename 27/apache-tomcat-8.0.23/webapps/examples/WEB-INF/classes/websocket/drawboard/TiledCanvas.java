@@ -0,0 +1,159 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package websocket.drawboard;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * The image of a Room, divided into tiles of {@link #TILE_SIZE} pixels.
+ * DrawMessages are drawn onto one image as before, but the canvas remembers
+ * which tiles they changed, so that a {@link RoomSnapshot} only needs to
+ * encode those tiles again.<br><br>
+ *
+ * Note: This class is not thread-safe; it is used by the Room's executor.
+ */
+public final class TiledCanvas {
+
+    public static final int TILE_SIZE = 64;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+
+    private final BufferedImage image;
+    private final Graphics2D graphics;
+
+    /**
+     * The tiles that have been changed since the last call of
+     * {@link #takeChangedTiles()}, by tile index (row by row).
+     */
+    private final boolean[] changed;
+
+    public TiledCanvas(int width, int height) {
+        this.width = width;
+        this.height = height;
+        tilesX = getTileCount(width);
+        tilesY = getTileCount(height);
+        changed = new boolean[tilesX * tilesY];
+
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // Clear the image with white background.
+        graphics.setBackground(Color.WHITE);
+        graphics.clearRect(0, 0, width, height);
+    }
+
+    /**
+     * Returns the number of tiles needed for the given number of pixels.
+     */
+    public static int getTileCount(int pixels) {
+        return (pixels + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Draws the given DrawMessage and marks the tiles it may have changed.
+     * @param msg
+     */
+    public void draw(DrawMessage msg) {
+        msg.draw(graphics);
+
+        // The stroke reaches half its thickness beyond the points (a bit
+        // more at the miter joins of rectangles), plus antialiasing.
+        double margin = msg.getThickness() * 0.75 + 2;
+        markChanged(Math.min(msg.getX1(), msg.getX2()) - margin,
+                Math.min(msg.getY1(), msg.getY2()) - margin,
+                Math.max(msg.getX1(), msg.getX2()) + margin,
+                Math.max(msg.getY1(), msg.getY2()) + margin);
+    }
+
+    private void markChanged(double minX, double minY, double maxX,
+            double maxY) {
+        if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+            // Nothing has been drawn onto the image.
+            return;
+        }
+        int tx1 = getTile(minX, tilesX), tx2 = getTile(maxX, tilesX);
+        int ty1 = getTile(minY, tilesY), ty2 = getTile(maxY, tilesY);
+        for (int ty = ty1; ty <= ty2; ty++) {
+            for (int tx = tx1; tx <= tx2; tx++) {
+                changed[ty * tilesX + tx] = true;
+            }
+        }
+    }
+
+    private static int getTile(double coord, int tileCount) {
+        return (int) Math.max(0, Math.min(tileCount - 1,
+                Math.floor(coord / TILE_SIZE)));
+    }
+
+    /**
+     * Returns copies of the tiles that have been changed since the last
+     * call, by tile index (row by row, <code>null</code> for the other
+     * tiles), and marks all tiles as unchanged. Tiles at the right and
+     * bottom edge may be smaller than {@link #TILE_SIZE}.<br>
+     * The copies can be used by other threads.
+     */
+    public BufferedImage[] takeChangedTiles() {
+        BufferedImage[] tiles = new BufferedImage[changed.length];
+        for (int i = 0; i < changed.length; i++) {
+            if (changed[i]) {
+                int x = (i % tilesX) * TILE_SIZE, y = (i / tilesX) * TILE_SIZE;
+                int w = Math.min(TILE_SIZE, width - x),
+                        h = Math.min(TILE_SIZE, height - y);
+
+                BufferedImage tile = new BufferedImage(w, h,
+                        BufferedImage.TYPE_INT_RGB);
+                image.getSubimage(x, y, w, h).copyData(tile.getRaster());
+                tiles[i] = tile;
+                changed[i] = false;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Marks the tiles returned by {@link #takeChangedTiles()} as changed
+     * again, e.g. if they could not be encoded.
+     * @param tiles
+     */
+    public void markChanged(BufferedImage[] tiles) {
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                changed[i] = true;
+            }
+        }
+    }
+
+    public void dispose() {
+        graphics.dispose();
+    }
+}
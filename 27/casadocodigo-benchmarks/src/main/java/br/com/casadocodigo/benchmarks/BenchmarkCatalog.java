@@ -0,0 +1,110 @@
+package br.com.casadocodigo.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import br.com.casadocodigo.loja.models.BookType;
+import br.com.casadocodigo.loja.models.CartCatalog;
+import br.com.casadocodigo.loja.models.Price;
+import br.com.casadocodigo.loja.models.PriceTable;
+import br.com.casadocodigo.loja.models.Product;
+
+/**
+ * Produtos sinteticos usados pelos benchmarks. O catalogo e o CartCatalog
+ * dos carrinhos no lugar do ProductDAO, para que os itens lidos de um
+ * carrinho serializado encontrem seus produtos e precos sem banco.
+ */
+class BenchmarkCatalog implements CartCatalog {
+
+	private static final String[] WORDS = { "java", "programação", "orientação", "objetos", "spring", "mvc",
+			"jpa", "hibernate", "testes", "automatizados", "arquitetura", "código", "limpo", "ágil", "scrum",
+			"design", "padrões", "web", "mobile", "android", "ios", "ruby", "rails", "python", "dados",
+			"segurança", "desempenho", "algoritmos", "estruturas", "lógica", "negócios", "startup" };
+
+	private static final String[] SYLLABLES = { "ba", "ca", "da", "fe", "gi", "lo", "ma", "ne", "pi", "ro",
+			"sa", "te", "vu", "xa", "zo", "ção", "ões", "ês" };
+	private static final int GENERATED_WORDS = 5000;
+
+	private final Map<Integer, Product> products = new HashMap<>();
+	private final PriceTable priceTable;
+
+	BenchmarkCatalog(int size) {
+		Random random = new Random(42);
+		String[] vocabulary = vocabulary(random);
+		for (int id = 1; id <= size; id++) {
+			Product product = new Product();
+			product.setId(id);
+			product.setTitle(sentence(random, vocabulary, 3 + random.nextInt(4)) + " " + id);
+			product.setDescription(sentence(random, vocabulary, 20 + random.nextInt(20)));
+			product.setNumberOfPages(100 + random.nextInt(400));
+			for (BookType bookType : BookType.values()) {
+				Price price = new Price();
+				price.setBookType(bookType);
+				price.setValue(BigDecimal.valueOf(2990 + random.nextInt(7000), 2));
+				product.getPrices().add(price);
+			}
+			products.put(id, product);
+		}
+		PriceTable.Builder prices = new PriceTable.Builder();
+		for (Product product : products()) {
+			for (Price price : product.getPrices()) {
+				prices.add(product.getId(), price.getBookType(), price.getValue());
+			}
+		}
+		priceTable = prices.build();
+	}
+
+	@Override
+	public PriceTable priceTable() {
+		return priceTable;
+	}
+
+	@Override
+	public Product product(Integer id) {
+		return products.get(id);
+	}
+
+	List<Product> products() {
+		List<Product> list = new ArrayList<>(products.size());
+		for (int id = 1; id <= products.size(); id++) {
+			list.add(products.get(id));
+		}
+		return list;
+	}
+
+	/**
+	 * As palavras de WORDS, que aparecem em boa parte dos produtos, e alguns
+	 * milhares de palavras geradas e bem mais raras.
+	 */
+	private static String[] vocabulary(Random random) {
+		String[] vocabulary = new String[WORDS.length + GENERATED_WORDS];
+		System.arraycopy(WORDS, 0, vocabulary, 0, WORDS.length);
+		for (int i = WORDS.length; i < vocabulary.length; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int j = 0, syllables = 2 + random.nextInt(3); j < syllables; j++) {
+				word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			}
+			vocabulary[i] = word.toString();
+		}
+		return vocabulary;
+	}
+
+	/**
+	 * Palavras sorteadas com distribuicao enviesada para o comeco do
+	 * vocabulario, como num catalogo de verdade.
+	 */
+	private static String sentence(Random random, String[] vocabulary, int words) {
+		StringBuilder sentence = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sentence.append(i % 5 == 0 ? " de " : " ");
+			}
+			sentence.append(vocabulary[random.nextInt(random.nextInt(vocabulary.length) + 1)]);
+		}
+		return sentence.toString();
+	}
+}
@@ -0,0 +1,38 @@
+package br.com.casadocodigo.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Igual ao org.openjdk.jmh.Main, mas grava os resultados em JSON em
+ * target/jmh-result.json quando -rf e -rff nao forem informados, para que
+ * cada build deixe um arquivo que possa ser comparado com o anterior.
+ */
+public class BenchmarkMain {
+
+	private static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return;
+		}
+		if (commandLine.shouldList()) {
+			new Runner(commandLine).list();
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLine.getResult().hasValue()) {
+			options.result(DEFAULT_RESULT_FILE);
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,96 @@
+package br.com.casadocodigo.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.casadocodigo.loja.models.BookType;
+import br.com.casadocodigo.loja.models.ShoppingCart;
+import br.com.casadocodigo.loja.models.ShoppingItem;
+
+/**
+ * Operacoes do carrinho feitas a cada pagina: add no POST do carrinho e
+ * getQuantity/getTotal no cabecalho e na pagina do carrinho. totalAfterRead
+ * mede a leitura de um carrinho do CartStore seguida do total.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartBenchmark {
+
+	@Param({ "1", "10", "50" })
+	private int items;
+
+	private BenchmarkCatalog catalog;
+	private ShoppingItem[] catalogItems;
+	private ShoppingCart cart;
+	private byte[] serializedCart;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUpCatalog() throws IOException {
+		catalog = new BenchmarkCatalog(items);
+		catalogItems = new ShoppingItem[items];
+		for (int i = 0; i < items; i++) {
+			catalogItems[i] = new ShoppingItem(catalog.product(i + 1), BookType.values()[i % BookType.values().length]);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpCart() throws IOException {
+		cart = new ShoppingCart(catalog);
+		for (ShoppingItem item : catalogItems) {
+			cart.add(item);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			cart.writeExternal(out);
+		}
+		serializedCart = bytes.toByteArray();
+		next = 0;
+	}
+
+	@Benchmark
+	public void add() {
+		cart.add(catalogItems[next++ % items]);
+	}
+
+	@Benchmark
+	public BigDecimal getTotal() {
+		return cart.getTotal();
+	}
+
+	@Benchmark
+	public int getQuantity() {
+		return cart.getQuantity();
+	}
+
+	@Benchmark
+	public BigDecimal totalAfterRead() throws IOException {
+		ShoppingCart read = new ShoppingCart(catalog);
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedCart))) {
+			read.readExternal(in);
+		}
+		return read.getTotal();
+	}
+}
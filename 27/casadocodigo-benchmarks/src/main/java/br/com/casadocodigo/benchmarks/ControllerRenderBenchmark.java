@@ -0,0 +1,57 @@
+package br.com.casadocodigo.benchmarks;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import br.com.casadocodigo.loja.conf.AppWebConfiguration;
+import br.com.casadocodigo.lojacontrollers.HomeController;
+import br.com.casadocodigo.lojacontrollers.ProductsController;
+
+/**
+ * Uma requisicao inteira pelo DispatcherServlet ate a view: mapeamento,
+ * chamada do controller e resolucao da JSP com o mesmo ViewResolver da
+ * aplicacao. O MockMvc nao executa a JSP, so registra o forward, entao o
+ * que se mede aqui e o custo do Spring MVC em volta de cada pagina.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerRenderBenchmark {
+
+	private MockMvc mockMvc;
+
+	@Setup
+	public void setUp() {
+		mockMvc = MockMvcBuilders.standaloneSetup(new HomeController(), new ProductsController())
+				.setViewResolvers(new AppWebConfiguration().internalResourceViewResolver())
+				.build();
+	}
+
+	@Benchmark
+	public MvcResult homeIndex() throws Exception {
+		return mockMvc.perform(get("/home")).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult productsForm() throws Exception {
+		return mockMvc.perform(get("/products/form")).andReturn();
+	}
+}
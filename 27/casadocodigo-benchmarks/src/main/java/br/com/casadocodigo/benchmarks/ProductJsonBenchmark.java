@@ -0,0 +1,52 @@
+package br.com.casadocodigo.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.casadocodigo.loja.models.Product;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serializacao JSON de um produto com os tres precos, como em
+ * /products/page e /products/export, e a leitura usada na importacao.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductJsonBenchmark {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private Product product;
+	private byte[] json;
+
+	@Setup
+	public void setUp() throws IOException {
+		product = new BenchmarkCatalog(1).product(1);
+		json = mapper.writeValueAsBytes(product);
+	}
+
+	@Benchmark
+	public byte[] write() throws IOException {
+		return mapper.writeValueAsBytes(product);
+	}
+
+	@Benchmark
+	public Product read() throws IOException {
+		return mapper.readValue(json, Product.class);
+	}
+}
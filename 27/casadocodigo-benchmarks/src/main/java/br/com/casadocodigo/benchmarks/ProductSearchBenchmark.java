@@ -0,0 +1,59 @@
+package br.com.casadocodigo.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.casadocodigo.loja.models.Product;
+import br.com.casadocodigo.loja.search.ProductSearchIndex;
+import br.com.casadocodigo.loja.search.SearchHit;
+
+/**
+ * Consultas ao ProductSearchIndex com um catalogo sintetico de 100 mil
+ * produtos: um termo, prefixo de autocomplete, varios termos comuns e um
+ * termo que nao existe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class ProductSearchBenchmark {
+
+	@Param("100000")
+	private int products;
+
+	@Param({ "java", "progr", "ja", "spring mvc", "testes automatizados java", "arquitetura de codigo li", "xyz" })
+	private String query;
+
+	private ProductSearchIndex index;
+
+	@Setup
+	public void setUp() throws IOException {
+		List<Product> catalog = new BenchmarkCatalog(products).products();
+		index = new ProductSearchIndex();
+		index.rebuild(handler -> {
+			for (Product product : catalog) {
+				handler.handle(product);
+			}
+		});
+	}
+
+	@Benchmark
+	public List<SearchHit> search() {
+		return index.search(query, 10);
+	}
+}
@@ -0,0 +1,71 @@
+package br.com.casadocodigo.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.casadocodigo.loja.models.BookType;
+import br.com.casadocodigo.loja.models.ShoppingItem;
+
+/**
+ * hashCode e equals do ShoppingItem, chave do mapa de itens do carrinho.
+ * Os itens comparados sao instancias diferentes, como os que chegam de um
+ * request novo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShoppingItemBenchmark {
+
+	private ShoppingItem item;
+	private ShoppingItem sameItem;
+	private ShoppingItem otherType;
+	private Map<ShoppingItem, Integer> cartItems;
+
+	@Setup
+	public void setUp() {
+		BenchmarkCatalog catalog = new BenchmarkCatalog(20);
+		item = new ShoppingItem(catalog.product(7), BookType.EBOOK);
+		sameItem = new ShoppingItem(catalog.product(7), BookType.EBOOK);
+		otherType = new ShoppingItem(catalog.product(7), BookType.IMPRESSO);
+		cartItems = new HashMap<>();
+		for (int id = 1; id <= 20; id++) {
+			cartItems.put(new ShoppingItem(catalog.product(id), BookType.COMBO), id);
+		}
+		cartItems.put(sameItem, 7);
+	}
+
+	@Benchmark
+	public int hashCodeOfItem() {
+		return item.hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsSameProduct() {
+		return item.equals(sameItem);
+	}
+
+	@Benchmark
+	public boolean equalsOtherBookType() {
+		return item.equals(otherType);
+	}
+
+	@Benchmark
+	public Integer cartLookup() {
+		return cartItems.get(item);
+	}
+}
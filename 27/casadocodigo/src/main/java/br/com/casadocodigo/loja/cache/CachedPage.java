@@ -0,0 +1,36 @@
+package br.com.casadocodigo.loja.cache;
+
+/**
+ * HTML ja renderizado de uma pagina, com os dados usados nas requisicoes
+ * condicionais.
+ */
+public class CachedPage {
+
+	private final byte[] body;
+	private final String contentType;
+	private final String etag;
+	private final long lastModified;
+
+	public CachedPage(byte[] body, String contentType, String etag, long lastModified) {
+		this.body = body;
+		this.contentType = contentType;
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+}
@@ -0,0 +1,137 @@
+package br.com.casadocodigo.loja.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.guava.GuavaCache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+/**
+ * GuavaCache que mede o tempo de carga dos metodos anotados com
+ * {@code @Cacheable}: o tempo entre o miss de uma chave e o put da mesma
+ * chave na mesma thread. O inicio fica por chave, entao uma carga aninhada
+ * nao mistura os tempos, e uma carga que falhou e descartada no proximo
+ * acesso a chave.
+ * Evicts feitos dentro de uma transacao sao repetidos depois do commit, para
+ * que uma leitura concorrente nao deixe a versao antiga no cache.
+ *
+ * Cada evict ou clear incrementa a geracao do cache. Quem monta um valor fora
+ * do fluxo do {@code @Cacheable} (o PageCacheFilter) le a geracao antes e
+ * grava com {@link #putIfGeneration}, que descarta o valor se houve evict no
+ * meio.
+ */
+public class InstrumentedGuavaCache extends GuavaCache {
+
+	// limite de cargas sem put (metodo que lancou excecao) por thread
+	private static final int MAX_PENDING_LOADS = 64;
+
+	private final ThreadLocal<Map<Object, Long>> missStartedAt = new ThreadLocal<Map<Object, Long>>() {
+		@Override
+		protected Map<Object, Long> initialValue() {
+			return new HashMap<>();
+		}
+	};
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong totalLoadTime = new AtomicLong();
+
+	public InstrumentedGuavaCache(String name, Cache<Object, Object> cache, boolean allowNullValues) {
+		super(name, cache, allowNullValues);
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		ValueWrapper value = super.get(key);
+		Map<Object, Long> pending = missStartedAt.get();
+		if (value == null) {
+			if (pending.size() >= MAX_PENDING_LOADS) {
+				pending.clear();
+			}
+			pending.put(key, System.nanoTime());
+		} else {
+			pending.remove(key);
+		}
+		return value;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		super.put(key, value);
+		Long startedAt = missStartedAt.get().remove(key);
+		if (startedAt != null) {
+			loadCount.incrementAndGet();
+			totalLoadTime.addAndGet(System.nanoTime() - startedAt);
+		}
+	}
+
+	/**
+	 * Grava o valor se nenhum evict ou clear aconteceu desde que a geracao
+	 * foi lida. A geracao e conferida depois do put: um clear entre a
+	 * conferencia e o put deixaria o valor antigo no cache.
+	 */
+	public void putIfGeneration(Object key, Object value, long expectedGeneration) {
+		super.put(key, value);
+		if (generation.get() != expectedGeneration) {
+			super.evict(key);
+		}
+	}
+
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	@Override
+	public void evict(Object key) {
+		generation.incrementAndGet();
+		super.evict(key);
+		afterCommit(() -> {
+			generation.incrementAndGet();
+			super.evict(key);
+		});
+	}
+
+	@Override
+	public void clear() {
+		generation.incrementAndGet();
+		super.clear();
+		afterCommit(() -> {
+			generation.incrementAndGet();
+			super.clear();
+		});
+	}
+
+	private void afterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		}
+	}
+
+	public Map<String, Object> stats() {
+		CacheStats stats = getNativeCache().stats();
+		long loads = loadCount.get();
+		long loadTime = totalLoadTime.get();
+
+		Map<String, Object> description = new LinkedHashMap<>();
+		description.put("size", getNativeCache().size());
+		description.put("hits", stats.hitCount());
+		description.put("misses", stats.missCount());
+		description.put("hitRatio", stats.hitRate());
+		description.put("evictions", stats.evictionCount());
+		description.put("loads", loads);
+		description.put("totalLoadMillis", TimeUnit.NANOSECONDS.toMillis(loadTime));
+		description.put("averageLoadMillis", loads == 0 ? 0.0 : loadTime / (double) loads / 1000000.0);
+		return description;
+	}
+}
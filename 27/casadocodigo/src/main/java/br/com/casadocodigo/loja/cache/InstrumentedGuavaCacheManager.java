@@ -0,0 +1,49 @@
+package br.com.casadocodigo.loja.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.guava.GuavaCacheManager;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * GuavaCacheManager que aceita uma especificacao diferente por cache e cria
+ * {@link InstrumentedGuavaCache}s. As especificacoes devem ser definidas
+ * antes dos nomes dos caches.
+ */
+public class InstrumentedGuavaCacheManager extends GuavaCacheManager {
+
+	private final Map<String, String> specifications = new HashMap<>();
+
+	public void setCacheSpecifications(Map<String, String> specifications) {
+		this.specifications.putAll(specifications);
+	}
+
+	@Override
+	protected Cache createGuavaCache(String name) {
+		return new InstrumentedGuavaCache(name, createNativeGuavaCache(name), isAllowNullValues());
+	}
+
+	@Override
+	protected com.google.common.cache.Cache<Object, Object> createNativeGuavaCache(String name) {
+		String specification = specifications.get(name);
+		if (specification == null) {
+			return super.createNativeGuavaCache(name);
+		}
+		return CacheBuilder.from(specification).build();
+	}
+
+	public Map<String, Map<String, Object>> stats() {
+		Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+		for (String name : getCacheNames()) {
+			Cache cache = getCache(name);
+			if (cache instanceof InstrumentedGuavaCache) {
+				stats.put(name, ((InstrumentedGuavaCache) cache).stats());
+			}
+		}
+		return stats;
+	}
+}
@@ -0,0 +1,184 @@
+package br.com.casadocodigo.loja.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.HttpSession;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import br.com.casadocodigo.loja.carts.CartIdInterceptor;
+
+/**
+ * Guarda o HTML renderizado das paginas de catalogo e responde as proximas
+ * requisicoes com os bytes prontos, com ETag, Last-Modified e 304. O cache e
+ * limpo quando um produto e gravado (ver ProductDAO); uma pagina renderizada
+ * enquanto o cache era limpo nao e guardada, pela geracao do
+ * InstrumentedGuavaCache.
+ *
+ * Requisicoes com carrinho ou com atributos na sessao sao sempre
+ * renderizadas, ja que a pagina delas nao e igual para todos.
+ */
+public class PageCacheFilter extends OncePerRequestFilter {
+
+	private final InstrumentedGuavaCache cache;
+	private final List<String> patterns;
+	private final AntPathMatcher matcher = new AntPathMatcher();
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	public PageCacheFilter(InstrumentedGuavaCache cache, List<String> patterns) {
+		this.cache = cache;
+		this.patterns = patterns;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String path = urlPathHelper.getPathWithinApplication(request);
+		if (!"GET".equals(request.getMethod()) || !matches(path) || isPersonalized(request)) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		String key = request.getQueryString() == null ? path : path + "?" + request.getQueryString();
+		CachedPage page = cache.get(key, CachedPage.class);
+		if (page == null) {
+			long generation = cache.getGeneration();
+			BufferingResponseWrapper wrapper = new BufferingResponseWrapper(response);
+			chain.doFilter(request, wrapper);
+			byte[] body = wrapper.getBody();
+			if (wrapper.getStatus() != HttpServletResponse.SC_OK) {
+				if (!response.isCommitted()) {
+					write(response, body);
+				}
+				return;
+			}
+			page = new CachedPage(body, wrapper.getContentType(),
+					"\"" + DigestUtils.md5DigestAsHex(body) + "\"",
+					System.currentTimeMillis() / 1000 * 1000);
+			if (!isPersonalized(request)) {
+				cache.putIfGeneration(key, page, generation);
+			}
+		}
+		send(page, request, response);
+	}
+
+	private boolean matches(String path) {
+		for (String pattern : patterns) {
+			if (matcher.match(pattern, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isPersonalized(HttpServletRequest request) {
+		if (CartIdInterceptor.hasCart(request)) {
+			return true;
+		}
+		HttpSession session = request.getSession(false);
+		return session != null && session.getAttributeNames().hasMoreElements();
+	}
+
+	private void send(CachedPage page, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setHeader("ETag", page.getEtag());
+		response.setDateHeader("Last-Modified", page.getLastModified());
+		response.setHeader("Cache-Control", "no-cache");
+		if (isNotModified(page, request)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentType(page.getContentType());
+		write(response, page.getBody());
+	}
+
+	private boolean isNotModified(CachedPage page, HttpServletRequest request) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			return ifNoneMatch.equals("*") || ifNoneMatch.contains(page.getEtag());
+		}
+		long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		return ifModifiedSince != -1 && page.getLastModified() <= ifModifiedSince;
+	}
+
+	private void write(HttpServletResponse response, byte[] body) throws IOException {
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+
+	private static class BufferingResponseWrapper extends HttpServletResponseWrapper {
+
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+		private ServletOutputStream outputStream;
+		private PrintWriter writer;
+
+		public BufferingResponseWrapper(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			if (outputStream == null) {
+				outputStream = new ServletOutputStream() {
+					@Override
+					public void write(int b) {
+						buffer.write(b);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) {
+						buffer.write(b, off, len);
+					}
+				};
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(buffer, getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		@Override
+		public void setContentLength(int len) {
+		}
+
+		@Override
+		public void flushBuffer() {
+			if (writer != null) {
+				writer.flush();
+			}
+		}
+
+		@Override
+		public void resetBuffer() {
+			buffer.reset();
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			buffer.reset();
+		}
+
+		public byte[] getBody() {
+			flushBuffer();
+			return buffer.toByteArray();
+		}
+	}
+}
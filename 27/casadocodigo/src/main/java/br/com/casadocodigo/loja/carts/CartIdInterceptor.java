@@ -0,0 +1,77 @@
+package br.com.casadocodigo.loja.carts;
+
+import java.util.UUID;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Garante o cookie com o id do carrinho nas urls que alteram o carrinho e
+ * deixa o id disponivel para o {@link CartScope}. Nas demais urls o id so e
+ * lido se o cookie ja existir, para que paginas de catalogo continuem sem
+ * cookie e possam vir do cache de paginas.
+ */
+public class CartIdInterceptor extends HandlerInterceptorAdapter {
+
+	public static final String COOKIE_NAME = "CART_ID";
+	private static final String ATTRIBUTE = CartIdInterceptor.class.getName() + ".CART_ID";
+	private static final int MAX_AGE = 30 * 24 * 60 * 60;
+
+	private final boolean create;
+
+	public CartIdInterceptor(boolean create) {
+		this.create = create;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (request.getAttribute(ATTRIBUTE) != null) {
+			return true;
+		}
+		String cartId = read(request);
+		if (cartId == null && create) {
+			cartId = UUID.randomUUID().toString();
+			Cookie cookie = new Cookie(COOKIE_NAME, cartId);
+			cookie.setPath(request.getContextPath() + "/");
+			cookie.setMaxAge(MAX_AGE);
+			cookie.setHttpOnly(true);
+			response.addCookie(cookie);
+		}
+		if (cartId != null) {
+			request.setAttribute(ATTRIBUTE, cartId);
+		}
+		return true;
+	}
+
+	public static boolean hasCart(HttpServletRequest request) {
+		return read(request) != null;
+	}
+
+	/**
+	 * Id do carrinho da requisicao, ou null se ela nao tiver carrinho.
+	 */
+	public static String cartId(HttpServletRequest request) {
+		return (String) request.getAttribute(ATTRIBUTE);
+	}
+
+	static String cartId(RequestAttributes attributes) {
+		return (String) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+	}
+
+	private static String read(HttpServletRequest request) {
+		Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
+		if (cookie == null) {
+			return null;
+		}
+		try {
+			return UUID.fromString(cookie.getValue()).toString();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
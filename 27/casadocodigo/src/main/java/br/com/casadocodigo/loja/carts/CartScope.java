@@ -0,0 +1,144 @@
+package br.com.casadocodigo.loja.carts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.Scope;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Escopo "cart": o bean (que precisa ser Externalizable) vive no CartStore
+ * com a chave do cookie de carrinho, e nao na sessao do Tomcat, entao
+ * qualquer no atende qualquer usuario.
+ *
+ * O bean e lido do store na primeira vez que a requisicao o usa e, no fim
+ * da requisicao, gravado de volta se tiver mudado, condicionado a versao
+ * lida. Se outra requisicao gravou antes, um {@link RebasableCart} e
+ * relido e as alteracoes desta requisicao sao aplicadas de novo; se o
+ * carrinho foi removido (pelo checkout) no meio, as alteracoes sao
+ * descartadas. Sem cookie de carrinho (ver {@link CartIdInterceptor}) o
+ * bean e novo a cada requisicao e nunca e gravado.
+ */
+public class CartScope implements Scope {
+
+	public static final String NAME = "cart";
+
+	private static final Logger logger = LoggerFactory.getLogger(CartScope.class);
+	private static final int MAX_SAVE_ATTEMPTS = 5;
+
+	private final Supplier<CartStore> store;
+
+	public CartScope(Supplier<CartStore> store) {
+		this.store = store;
+	}
+
+	@Override
+	public Object get(String name, ObjectFactory<?> objectFactory) {
+		RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
+		String attribute = attributeName(name);
+		Object bean = attributes.getAttribute(attribute, RequestAttributes.SCOPE_REQUEST);
+		if (bean != null) {
+			return bean;
+		}
+
+		String cartId = CartIdInterceptor.cartId(attributes);
+		Externalizable cart = (Externalizable) objectFactory.getObject();
+		try {
+			StoredCart stored = cartId == null ? null : store.get().get(cartId);
+			if (stored != null) {
+				try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stored.getCart()))) {
+					cart.readExternal(in);
+				}
+			}
+			StoredCart loaded = stored != null ? stored : new StoredCart(serialize(cart), CartStore.NO_VERSION);
+			attributes.setAttribute(attribute, cart, RequestAttributes.SCOPE_REQUEST);
+			if (cartId != null) {
+				attributes.registerDestructionCallback(attribute, () -> save(cartId, cart, loaded),
+						RequestAttributes.SCOPE_REQUEST);
+			}
+			return cart;
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Nao foi possivel ler o carrinho " + cartId, e);
+		}
+	}
+
+	private void save(String cartId, Externalizable cart, StoredCart loaded) {
+		try {
+			StoredCart base = loaded;
+			for (int attempt = 0; attempt < MAX_SAVE_ATTEMPTS; attempt++) {
+				byte[] current = serialize(cart);
+				if (Arrays.equals(current, base.getCart()) || store.get().put(cartId, current, base.getVersion())) {
+					return;
+				}
+				StoredCart newer = store.get().get(cartId);
+				if (newer == null) {
+					logger.info("Carrinho {} removido durante a requisicao, alteracoes descartadas", cartId);
+					return;
+				}
+				if (!(cart instanceof RebasableCart)) {
+					break;
+				}
+				try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(newer.getCart()))) {
+					((RebasableCart) cart).rebase(in);
+				}
+				base = newer;
+			}
+			logger.warn("Carrinho {} alterado por outra requisicao, alteracoes descartadas", cartId);
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Nao foi possivel gravar o carrinho " + cartId, e);
+		}
+	}
+
+	private byte[] serialize(Externalizable cart) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			cart.writeExternal(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public Object remove(String name) {
+		RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
+		String attribute = attributeName(name);
+		Object bean = attributes.getAttribute(attribute, RequestAttributes.SCOPE_REQUEST);
+		attributes.removeAttribute(attribute, RequestAttributes.SCOPE_REQUEST);
+		String cartId = CartIdInterceptor.cartId(attributes);
+		if (cartId != null) {
+			try {
+				store.get().delete(cartId);
+			} catch (IOException e) {
+				throw new IllegalStateException("Nao foi possivel remover o carrinho " + cartId, e);
+			}
+		}
+		return bean;
+	}
+
+	@Override
+	public void registerDestructionCallback(String name, Runnable callback) {
+	}
+
+	@Override
+	public Object resolveContextualObject(String key) {
+		return null;
+	}
+
+	@Override
+	public String getConversationId() {
+		return CartIdInterceptor.cartId(RequestContextHolder.currentRequestAttributes());
+	}
+
+	private String attributeName(String name) {
+		return CartScope.class.getName() + "." + name;
+	}
+}
@@ -0,0 +1,48 @@
+package br.com.casadocodigo.loja.carts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Armazenamento chave-valor dos carrinhos serializados, fora da sessao do
+ * Tomcat. A chave e o id do carrinho (um UUID vindo do cookie) e o valor e o
+ * carrinho no formato de {@code ShoppingCart.writeExternal}, com uma versao.
+ *
+ * As gravacoes sao condicionais: quem leu a versao 7 so grava se o carrinho
+ * ainda estiver na versao 7. Assim duas requisicoes do mesmo carrinho nao
+ * apagam a alteracao uma da outra, e um carrinho removido pelo checkout nao
+ * volta a existir pela gravacao de uma requisicao que o leu antes.
+ *
+ * Para varios nos atras de um balanceador, basta uma implementacao que fale
+ * com um servidor chave-valor compartilhado.
+ */
+public interface CartStore extends Closeable {
+
+	/**
+	 * Versao de um carrinho que nao existe (ou foi removido).
+	 */
+	long NO_VERSION = 0;
+
+	/**
+	 * Carrinho gravado, ou null se nao existir.
+	 */
+	StoredCart get(String cartId) throws IOException;
+
+	/**
+	 * Grava o carrinho com uma versao nova se a versao gravada ainda for
+	 * expectedVersion ({@link #NO_VERSION} para um carrinho novo). Devolve
+	 * false, sem gravar, se o carrinho mudou ou foi removido depois da
+	 * leitura.
+	 */
+	boolean put(String cartId, byte[] cart, long expectedVersion) throws IOException;
+
+	/**
+	 * Grava os carrinhos com as versoes que ja trazem, sem conferir a versao
+	 * anterior; usado pelo {@link WriteBehindCartStore}, que faz a conferencia
+	 * antes. Grava todos ou, se algum nao puder ser gravado, nenhum.
+	 */
+	void putAll(Map<String, StoredCart> carts) throws IOException;
+
+	void delete(String cartId) throws IOException;
+}
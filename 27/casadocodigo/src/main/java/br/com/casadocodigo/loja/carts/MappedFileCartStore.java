@@ -0,0 +1,291 @@
+package br.com.casadocodigo.loja.carts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * CartStore em um arquivo mapeado em memoria, fora do heap. O arquivo tem um
+ * cabecalho com o formato e depois uma tabela hash de slots de tamanho fixo
+ * com sondagem linear:
+ *
+ * <pre>
+ * [magic:4][formato:4]
+ * [estado:1][id msb:8][id lsb:8][versao:8][ultimo acesso:8][tamanho:4][carrinho...]
+ * ...
+ * </pre>
+ *
+ * Um carrinho removido (ou expirado, sem acesso ha mais de ttlMillis) nao
+ * deixa marca no slot: os carrinhos seguintes da sequencia voltam uma
+ * posicao quando podem, entao a busca sempre para no primeiro slot vazio. A
+ * tabela guarda no maximo 7/8 dos slots em carrinhos, para sempre haver
+ * slot vazio; acima disso o carrinho acessado ha mais tempo cede o lugar.
+ * Um arquivo de outro formato e zerado na abertura.
+ *
+ * Os dados sobrevivem a um restart do no, mas o arquivo nao e compartilhado
+ * entre maquinas; para isso use uma implementacao sobre um servidor
+ * chave-valor.
+ */
+public class MappedFileCartStore implements CartStore {
+
+	private static final int MAGIC = 0x43415254;
+	private static final int FORMAT = 2;
+	private static final int FILE_HEADER_SIZE = 8;
+
+	private static final byte EMPTY = 0;
+	private static final byte USED = 1;
+
+	private static final int ID_MSB = 1;
+	private static final int ID_LSB = 9;
+	private static final int VERSION = 17;
+	private static final int LAST_ACCESS = 25;
+	private static final int LENGTH = 33;
+	private static final int HEADER_SIZE = 37;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final int slots;
+	private final int slotSize;
+	private final int capacity;
+	private final long ttlMillis;
+	private int used;
+
+	public MappedFileCartStore(File path, int slots, int slotSize, long ttlMillis) throws IOException {
+		if (slotSize <= HEADER_SIZE) {
+			throw new IllegalArgumentException("Slot precisa ter mais que " + HEADER_SIZE + " bytes");
+		}
+		if (slots < 2) {
+			throw new IllegalArgumentException("Arquivo precisa ter pelo menos 2 slots");
+		}
+		this.slots = slots;
+		this.slotSize = slotSize;
+		this.capacity = slots - Math.max(1, slots / 8);
+		this.ttlMillis = ttlMillis;
+		this.file = new RandomAccessFile(path, "rw");
+		this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+				FILE_HEADER_SIZE + (long) slots * slotSize);
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+			for (int slot = 0; slot < slots; slot++) {
+				buffer.put(position(slot), EMPTY);
+			}
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, FORMAT);
+		}
+		for (int slot = 0; slot < slots; slot++) {
+			if (buffer.get(position(slot)) == USED) {
+				used++;
+			}
+		}
+	}
+
+	@Override
+	public synchronized StoredCart get(String cartId) {
+		int slot = find(UUID.fromString(cartId), System.currentTimeMillis());
+		if (slot < 0) {
+			return null;
+		}
+		int position = position(slot);
+		buffer.putLong(position + LAST_ACCESS, System.currentTimeMillis());
+		byte[] cart = new byte[buffer.getInt(position + LENGTH)];
+		ByteBuffer view = buffer.duplicate();
+		view.position(position + HEADER_SIZE);
+		view.get(cart);
+		return new StoredCart(cart, buffer.getLong(position + VERSION));
+	}
+
+	@Override
+	public synchronized boolean put(String cartId, byte[] cart, long expectedVersion) throws IOException {
+		checkSize(cartId, cart);
+		UUID id = UUID.fromString(cartId);
+		long now = System.currentTimeMillis();
+		int slot = find(id, now);
+		long version = slot < 0 ? NO_VERSION : buffer.getLong(position(slot) + VERSION);
+		if (version != expectedVersion) {
+			return false;
+		}
+		if (slot < 0) {
+			slot = freeSlot(id, now, null);
+		}
+		write(slot, id, new StoredCart(cart, StoredCart.nextVersion()), now);
+		return true;
+	}
+
+	/**
+	 * Confere o tamanho de todos os carrinhos antes de gravar o primeiro,
+	 * entao um carrinho grande demais nao deixa o lote pela metade. Os
+	 * carrinhos do lote nunca cedem o slot uns para os outros.
+	 */
+	@Override
+	public synchronized void putAll(Map<String, StoredCart> carts) throws IOException {
+		if (carts.size() > capacity) {
+			throw new IOException("Lote de " + carts.size() + " carrinhos maior que o arquivo");
+		}
+		for (Map.Entry<String, StoredCart> cart : carts.entrySet()) {
+			checkSize(cart.getKey(), cart.getValue().getCart());
+		}
+		long now = System.currentTimeMillis();
+		Set<UUID> batch = new HashSet<>();
+		for (String cartId : carts.keySet()) {
+			batch.add(UUID.fromString(cartId));
+		}
+		for (Map.Entry<String, StoredCart> cart : carts.entrySet()) {
+			UUID id = UUID.fromString(cart.getKey());
+			int slot = find(id, now);
+			if (slot < 0) {
+				slot = freeSlot(id, now, batch);
+			}
+			write(slot, id, cart.getValue(), now);
+		}
+	}
+
+	@Override
+	public synchronized void delete(String cartId) {
+		int slot = find(UUID.fromString(cartId), System.currentTimeMillis());
+		if (slot >= 0) {
+			remove(slot);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		buffer.force();
+		file.close();
+	}
+
+	private void checkSize(String cartId, byte[] cart) throws IOException {
+		if (cart.length > slotSize - HEADER_SIZE) {
+			throw new IOException("Carrinho " + cartId + " com " + cart.length + " bytes nao cabe no slot");
+		}
+	}
+
+	private void write(int slot, UUID id, StoredCart cart, long now) {
+		int position = position(slot);
+		if (buffer.get(position) != USED) {
+			used++;
+		}
+		buffer.putLong(position + ID_MSB, id.getMostSignificantBits());
+		buffer.putLong(position + ID_LSB, id.getLeastSignificantBits());
+		buffer.putLong(position + VERSION, cart.getVersion());
+		buffer.putLong(position + LAST_ACCESS, now);
+		buffer.putInt(position + LENGTH, cart.getCart().length);
+		ByteBuffer view = buffer.duplicate();
+		view.position(position + HEADER_SIZE);
+		view.put(cart.getCart());
+		buffer.put(position, USED);
+	}
+
+	/**
+	 * Slot do carrinho, ou -1. Um carrinho expirado e removido.
+	 */
+	private int find(UUID id, long now) {
+		int start = firstSlot(id);
+		for (int i = 0; i < slots; i++) {
+			int slot = (start + i) % slots;
+			int position = position(slot);
+			if (buffer.get(position) != USED) {
+				return -1;
+			}
+			if (buffer.getLong(position + ID_MSB) == id.getMostSignificantBits()
+					&& buffer.getLong(position + ID_LSB) == id.getLeastSignificantBits()) {
+				if (isExpired(slot, now)) {
+					remove(slot);
+					return -1;
+				}
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Primeiro slot vazio ou expirado na sequencia do id. Com a tabela na
+	 * capacidade, o carrinho acessado ha mais tempo (fora de keep) e
+	 * removido antes.
+	 */
+	private int freeSlot(UUID id, long now, Set<UUID> keep) {
+		while (true) {
+			int start = firstSlot(id);
+			for (int i = 0; i < slots; i++) {
+				int slot = (start + i) % slots;
+				if (buffer.get(position(slot)) != USED) {
+					if (used < capacity) {
+						return slot;
+					}
+					break;
+				}
+				if (isExpired(slot, now)) {
+					return slot;
+				}
+			}
+			remove(leastRecentlyUsed(keep));
+		}
+	}
+
+	private int leastRecentlyUsed(Set<UUID> keep) {
+		int oldest = -1;
+		long oldestAccess = Long.MAX_VALUE;
+		for (int slot = 0; slot < slots; slot++) {
+			int position = position(slot);
+			long lastAccess = buffer.getLong(position + LAST_ACCESS);
+			if (buffer.get(position) == USED && lastAccess < oldestAccess
+					&& (keep == null || !keep.contains(id(slot)))) {
+				oldest = slot;
+				oldestAccess = lastAccess;
+			}
+		}
+		return oldest;
+	}
+
+	/**
+	 * Esvazia o slot e traz para tras os carrinhos seguintes da sequencia
+	 * cujo slot de origem nao fique depois do buraco, para que nenhum fique
+	 * separado do slot de origem por um slot vazio.
+	 */
+	private void remove(int slot) {
+		int hole = slot;
+		for (int i = 1; i < slots; i++) {
+			int next = (slot + i) % slots;
+			int position = position(next);
+			if (buffer.get(position) != USED) {
+				break;
+			}
+			int home = firstSlot(id(next));
+			boolean stays = hole < next ? hole < home && home <= next : hole < home || home <= next;
+			if (!stays) {
+				ByteBuffer source = buffer.duplicate();
+				source.position(position);
+				source.limit(position + HEADER_SIZE + buffer.getInt(position + LENGTH));
+				ByteBuffer target = buffer.duplicate();
+				target.position(position(hole));
+				target.put(source);
+				hole = next;
+			}
+		}
+		buffer.put(position(hole), EMPTY);
+		used--;
+	}
+
+	private boolean isExpired(int slot, long now) {
+		return now - buffer.getLong(position(slot) + LAST_ACCESS) > ttlMillis;
+	}
+
+	private UUID id(int slot) {
+		int position = position(slot);
+		return new UUID(buffer.getLong(position + ID_MSB), buffer.getLong(position + ID_LSB));
+	}
+
+	private int position(int slot) {
+		return FILE_HEADER_SIZE + slot * slotSize;
+	}
+
+	private int firstSlot(UUID id) {
+		return (id.hashCode() & Integer.MAX_VALUE) % slots;
+	}
+}
@@ -0,0 +1,19 @@
+package br.com.casadocodigo.loja.carts;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+
+/**
+ * Bean do escopo cart que lembra as alteracoes feitas desde que foi lido e
+ * sabe aplica-las de novo sobre outra versao. O {@link CartScope} usa isso
+ * quando outra requisicao gravou o mesmo carrinho primeiro.
+ */
+public interface RebasableCart extends Externalizable {
+
+	/**
+	 * Troca o conteudo pelo carrinho lido de newer e aplica de novo as
+	 * alteracoes desta requisicao.
+	 */
+	void rebase(ObjectInput newer) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,37 @@
+package br.com.casadocodigo.loja.carts;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carrinho serializado e a versao com que foi gravado no CartStore. A versao
+ * muda a cada gravacao e nunca se repete, nem depois de um restart, entao
+ * um carrinho removido e criado de novo nao volta a uma versao antiga.
+ */
+public class StoredCart {
+
+	private static final AtomicLong lastVersion = new AtomicLong();
+
+	private final byte[] cart;
+	private final long version;
+
+	public StoredCart(byte[] cart, long version) {
+		this.cart = cart;
+		this.version = version;
+	}
+
+	public byte[] getCart() {
+		return cart;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Proxima versao: o instante atual em microssegundos, ou a anterior mais
+	 * um.
+	 */
+	public static long nextVersion() {
+		return lastVersion.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis() * 1000));
+	}
+}
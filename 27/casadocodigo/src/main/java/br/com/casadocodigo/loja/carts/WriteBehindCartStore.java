@@ -0,0 +1,235 @@
+package br.com.casadocodigo.loja.carts;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Acumula as gravacoes de carrinho e envia ao CartStore de verdade em lotes,
+ * a cada flushIntervalMillis. Varias alteracoes do mesmo carrinho entre dois
+ * envios viram uma so gravacao. Leituras e a conferencia de versao enxergam
+ * primeiro o que ainda nao foi enviado.
+ *
+ * No maximo maxPending carrinhos ficam pendentes; com a fila cheia, quem
+ * grava envia a fila antes e, se ainda assim nao houver espaco, recebe o
+ * erro. Se o lote falhar, os carrinhos sao enviados um a um, e o que falhar
+ * {@value #MAX_FAILURES} vezes seguidas e descartado com um erro no log em
+ * vez de ficar pendente para sempre.
+ */
+public class WriteBehindCartStore implements CartStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindCartStore.class);
+	private static final int MAX_FAILURES = 5;
+
+	private static final int RETRY = 0;
+	private static final int CONFLICT = 1;
+	private static final int WRITTEN = 2;
+
+	private final CartStore delegate;
+	private final int maxPending;
+	private final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<>();
+	private final AtomicLong removals = new AtomicLong();
+	private final ScheduledExecutorService flusher;
+
+	public WriteBehindCartStore(CartStore delegate, long flushIntervalMillis, int maxPending) {
+		this.delegate = delegate;
+		this.maxPending = maxPending;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cart-write-behind");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public StoredCart get(String cartId) throws IOException {
+		Pending cart = pending.get(cartId);
+		if (cart != null) {
+			return cart.cart;
+		}
+		return delegate.get(cartId);
+	}
+
+	/**
+	 * A versao gravada no delegate e lida antes do compute, fora do lock do
+	 * mapa. Se no meio tempo algum carrinho saiu da fila (e pode ter sido
+	 * este, gravado no delegate com outra versao), a leitura e refeita.
+	 */
+	@Override
+	public boolean put(String cartId, byte[] cart, long expectedVersion) throws IOException {
+		reserve(cartId, 1);
+		while (true) {
+			long removalsBefore = removals.get();
+			Pending before = pending.get(cartId);
+			long storedVersion = before == null ? storedVersion(cartId) : NO_VERSION;
+			int[] result = { RETRY };
+			pending.compute(cartId, (id, current) -> {
+				long version;
+				if (current != null) {
+					version = current.cart == null ? NO_VERSION : current.cart.getVersion();
+				} else if (before == null && removals.get() == removalsBefore) {
+					version = storedVersion;
+				} else {
+					return null;
+				}
+				if (version != expectedVersion) {
+					result[0] = CONFLICT;
+					return current;
+				}
+				result[0] = WRITTEN;
+				return new Pending(new StoredCart(cart, StoredCart.nextVersion()));
+			});
+			if (result[0] != RETRY) {
+				return result[0] == WRITTEN;
+			}
+		}
+	}
+
+	@Override
+	public void putAll(Map<String, StoredCart> carts) throws IOException {
+		reserve(null, carts.size());
+		for (Map.Entry<String, StoredCart> cart : carts.entrySet()) {
+			pending.put(cart.getKey(), new Pending(cart.getValue()));
+		}
+	}
+
+	@Override
+	public void delete(String cartId) throws IOException {
+		reserve(cartId, 1);
+		pending.put(cartId, new Pending(null));
+	}
+
+	/**
+	 * Envia o que estiver pendente. Carrinhos que mudaram enquanto o lote era
+	 * gravado continuam pendentes.
+	 */
+	public synchronized void flush() {
+		Map<String, Pending> batch = new HashMap<>(pending);
+		if (batch.isEmpty()) {
+			return;
+		}
+		Map<String, StoredCart> writes = new HashMap<>();
+		for (Map.Entry<String, Pending> cart : batch.entrySet()) {
+			if (cart.getValue().cart != null) {
+				writes.put(cart.getKey(), cart.getValue().cart);
+			}
+		}
+		try {
+			delegate.putAll(writes);
+			for (String cartId : writes.keySet()) {
+				remove(cartId, batch.get(cartId));
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Falha gravando lote de " + writes.size() + " carrinhos, enviando um a um", e);
+			for (Map.Entry<String, StoredCart> cart : writes.entrySet()) {
+				String cartId = cart.getKey();
+				send(cartId, batch.get(cartId), () -> delegate.putAll(Collections.singletonMap(cartId, cart.getValue())));
+			}
+		}
+		for (Map.Entry<String, Pending> cart : batch.entrySet()) {
+			if (cart.getValue().cart == null) {
+				String cartId = cart.getKey();
+				send(cartId, cart.getValue(), () -> delegate.delete(cartId));
+			}
+		}
+	}
+
+	private void send(String cartId, Pending cart, Write write) {
+		try {
+			write.run();
+			remove(cartId, cart);
+		} catch (IOException | RuntimeException e) {
+			if (++cart.failures >= MAX_FAILURES) {
+				if (remove(cartId, cart)) {
+					logger.error("Carrinho " + cartId + " descartado depois de " + cart.failures + " falhas", e);
+				}
+			} else {
+				logger.warn("Falha gravando o carrinho {}: {}", cartId, e.toString());
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			logger.error("Falha gravando " + pending.size() + " carrinhos pendentes", e);
+		}
+	}
+
+	/**
+	 * Abre espaco na fila para count carrinhos novos, enviando a fila na
+	 * thread de quem grava se ela estiver cheia.
+	 */
+	private void reserve(String cartId, int count) throws IOException {
+		if (cartId != null && pending.containsKey(cartId)) {
+			return;
+		}
+		if (pending.size() + count > maxPending) {
+			flush();
+			if (pending.size() + count > maxPending) {
+				throw new IOException("Fila de gravacao de carrinhos cheia: " + pending.size() + " pendentes");
+			}
+		}
+	}
+
+	private long storedVersion(String cartId) throws IOException {
+		StoredCart stored = delegate.get(cartId);
+		return stored == null ? NO_VERSION : stored.getVersion();
+	}
+
+	/**
+	 * Tira o carrinho da fila se ele ainda for o pendente. O contador sobe
+	 * antes, para que um put que ve a fila sem o carrinho veja tambem o
+	 * contador novo.
+	 */
+	private boolean remove(String cartId, Pending cart) {
+		removals.incrementAndGet();
+		return pending.remove(cartId, cart);
+	}
+
+	@Override
+	public void close() throws IOException {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		if (!pending.isEmpty()) {
+			logger.error("{} carrinhos nao foram gravados antes de fechar", pending.size());
+		}
+		delegate.close();
+	}
+
+	/**
+	 * Carrinho pendente; sem carrinho, uma remocao pendente.
+	 */
+	private static class Pending {
+
+		private final StoredCart cart;
+		private int failures;
+
+		Pending(StoredCart cart) {
+			this.cart = cart;
+		}
+	}
+
+	private interface Write {
+
+		void run() throws IOException;
+	}
+}
@@ -0,0 +1,101 @@
+package br.com.casadocodigo.loja.checkout;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import br.com.casadocodigo.loja.models.Order;
+import br.com.casadocodigo.loja.models.OrderItem;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Andamento de um checkout, identificado pela chave de idempotencia. Os
+ * itens e o total sao uma copia do carrinho no momento do pedido; o
+ * carrinho em si nao sai da requisicao.
+ */
+public class Checkout {
+
+	public enum Status {
+		PENDING, PAID, DECLINED, FAILED
+	}
+
+	private final String idempotencyKey;
+	private final String cartId;
+	private final List<OrderItem> items;
+	private final BigDecimal total;
+	private final CompletableFuture<Checkout> completion = new CompletableFuture<>();
+	private volatile Status status = Status.PENDING;
+	private volatile Integer orderId;
+	private volatile String message;
+
+	Checkout(String idempotencyKey, String cartId, List<OrderItem> items, BigDecimal total) {
+		this.idempotencyKey = idempotencyKey;
+		this.cartId = cartId;
+		this.items = items;
+		this.total = total;
+	}
+
+	static Checkout of(Order order) {
+		Checkout checkout = new Checkout(order.getIdempotencyKey(), null, order.getItems(), order.getTotal());
+		checkout.paid(order.getId());
+		return checkout;
+	}
+
+	/**
+	 * Executa a acao quando o checkout terminar, na thread que o terminar, ou
+	 * na hora se ja tiver terminado.
+	 */
+	public void whenDone(Consumer<Checkout> action) {
+		completion.thenAccept(action);
+	}
+
+	void paid(Integer orderId) {
+		this.orderId = orderId;
+		finish(Status.PAID, null);
+	}
+
+	void declined(String message) {
+		finish(Status.DECLINED, message);
+	}
+
+	void failed(String message) {
+		finish(Status.FAILED, message);
+	}
+
+	private void finish(Status status, String message) {
+		this.message = message;
+		this.status = status;
+		completion.complete(this);
+	}
+
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	@JsonIgnore
+	public String getCartId() {
+		return cartId;
+	}
+
+	public List<OrderItem> getItems() {
+		return items;
+	}
+
+	public BigDecimal getTotal() {
+		return total;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Integer getOrderId() {
+		return orderId;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+}
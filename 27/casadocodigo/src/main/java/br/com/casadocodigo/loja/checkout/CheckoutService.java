@@ -0,0 +1,155 @@
+package br.com.casadocodigo.loja.checkout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import br.com.casadocodigo.loja.carts.CartStore;
+import br.com.casadocodigo.loja.daos.OrderDAO;
+import br.com.casadocodigo.loja.models.Order;
+import br.com.casadocodigo.loja.models.OrderItem;
+import br.com.casadocodigo.loja.models.PriceTable;
+import br.com.casadocodigo.loja.models.ShoppingCart;
+import br.com.casadocodigo.loja.models.ShoppingItem;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Fecha pedidos fora das threads do Tomcat. A requisicao so copia o
+ * carrinho e entrega a copia ao checkoutExecutor, que tem fila limitada;
+ * cobranca e gravacao do pedido acontecem nas threads dele. Com a fila
+ * cheia o submit falha na hora, em vez de segurar a requisicao.
+ *
+ * Cada checkout tem uma chave de idempotencia: a mesma chave devolve o
+ * mesmo checkout, sem cobrar nem gravar de novo. Os checkouts ficam em
+ * memoria por um dia; depois disso os pagos ainda sao achados no banco.
+ */
+@Service
+public class CheckoutService {
+
+	private static final Logger logger = LoggerFactory.getLogger(CheckoutService.class);
+
+	@Autowired
+	private OrderDAO orderDAO;
+
+	@Autowired
+	private PaymentGateway paymentGateway;
+
+	@Autowired
+	private CartStore cartStore;
+
+	@Autowired
+	@Qualifier("checkoutExecutor")
+	private TaskExecutor executor;
+
+	private final ConcurrentMap<String, Checkout> checkouts = CacheBuilder.newBuilder()
+			.expireAfterWrite(1, TimeUnit.DAYS)
+			.<String, Checkout> build()
+			.asMap();
+
+	/**
+	 * Enfileira o checkout do carrinho. Se a chave ja for conhecida, devolve
+	 * o checkout dela; um checkout que falhou por erro interno pode ser
+	 * repetido com a mesma chave.
+	 *
+	 * @throws TaskRejectedException se a fila estiver cheia
+	 */
+	public Checkout submit(String idempotencyKey, String cartId, ShoppingCart cart) {
+		Checkout existing = checkouts.get(idempotencyKey);
+		if (existing != null && existing.getStatus() != Checkout.Status.FAILED) {
+			return existing;
+		}
+
+		Checkout checkout = snapshot(idempotencyKey, cartId, cart);
+		boolean registered = existing == null
+				? checkouts.putIfAbsent(idempotencyKey, checkout) == null
+				: checkouts.replace(idempotencyKey, existing, checkout);
+		if (!registered) {
+			return checkouts.get(idempotencyKey);
+		}
+		try {
+			executor.execute(() -> process(checkout));
+		} catch (TaskRejectedException e) {
+			checkouts.remove(idempotencyKey, checkout);
+			throw e;
+		}
+		return checkout;
+	}
+
+	public Checkout find(String idempotencyKey) {
+		Checkout checkout = checkouts.get(idempotencyKey);
+		if (checkout == null) {
+			Order order = orderDAO.findByIdempotencyKey(idempotencyKey);
+			if (order != null) {
+				checkout = Checkout.of(order);
+			}
+		}
+		return checkout;
+	}
+
+	private Checkout snapshot(String idempotencyKey, String cartId, ShoppingCart cart) {
+		List<OrderItem> items = new ArrayList<>();
+		for (ShoppingItem item : cart.getList()) {
+			OrderItem orderItem = new OrderItem();
+			orderItem.setProductId(item.getProductId());
+			orderItem.setBookType(item.getBookType());
+			orderItem.setQuantity(cart.getQuantity(item));
+			orderItem.setUnitPrice(PriceTable.toPrice(cart.getPriceInCents(item)));
+			items.add(orderItem);
+		}
+		return new Checkout(idempotencyKey, cartId, items, PriceTable.toPrice(cart.getTotalInCents()));
+	}
+
+	private void process(Checkout checkout) {
+		String idempotencyKey = checkout.getIdempotencyKey();
+		try {
+			Order existing = orderDAO.findByIdempotencyKey(idempotencyKey);
+			if (existing != null) {
+				checkout.paid(existing.getId());
+				return;
+			}
+
+			PaymentResult payment = paymentGateway.charge(idempotencyKey, checkout.getTotal());
+			if (!payment.isApproved()) {
+				checkout.declined(payment.getMessage());
+				return;
+			}
+
+			Order order = new Order();
+			order.setIdempotencyKey(idempotencyKey);
+			order.setTotal(checkout.getTotal());
+			order.setPaymentId(payment.getTransactionId());
+			order.setCreatedAt(Calendar.getInstance());
+			order.setItems(new ArrayList<>(checkout.getItems()));
+			orderDAO.save(order);
+			checkout.paid(order.getId());
+		} catch (RuntimeException e) {
+			logger.error("Falha no checkout " + idempotencyKey, e);
+			checkout.failed("Nao foi possivel concluir o pedido, tente de novo");
+			return;
+		}
+		deleteCart(checkout.getCartId());
+	}
+
+	private void deleteCart(String cartId) {
+		if (cartId == null) {
+			return;
+		}
+		try {
+			cartStore.delete(cartId);
+		} catch (IOException e) {
+			logger.warn("Pedido fechado, mas o carrinho " + cartId + " nao foi removido", e);
+		}
+	}
+}
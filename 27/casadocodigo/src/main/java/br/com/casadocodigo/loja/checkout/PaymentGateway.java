@@ -0,0 +1,12 @@
+package br.com.casadocodigo.loja.checkout;
+
+import java.math.BigDecimal;
+
+/**
+ * Cobranca do pedido. Chamadas repetidas com a mesma chave de idempotencia
+ * devem resultar em uma cobranca so.
+ */
+public interface PaymentGateway {
+
+	PaymentResult charge(String idempotencyKey, BigDecimal amount);
+}
@@ -0,0 +1,34 @@
+package br.com.casadocodigo.loja.checkout;
+
+public class PaymentResult {
+
+	private final boolean approved;
+	private final String transactionId;
+	private final String message;
+
+	private PaymentResult(boolean approved, String transactionId, String message) {
+		this.approved = approved;
+		this.transactionId = transactionId;
+		this.message = message;
+	}
+
+	public static PaymentResult approved(String transactionId) {
+		return new PaymentResult(true, transactionId, null);
+	}
+
+	public static PaymentResult declined(String message) {
+		return new PaymentResult(false, null, message);
+	}
+
+	public boolean isApproved() {
+		return approved;
+	}
+
+	public String getTransactionId() {
+		return transactionId;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+}
@@ -0,0 +1,46 @@
+package br.com.casadocodigo.loja.checkout;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Gateway de pagamento local, para desenvolvimento e testes. Demora
+ * latencyMillis, como um gateway de verdade, aprova cobrancas de ate
+ * {@link #LIMIT} e recusa as maiores. A mesma chave devolve sempre o
+ * resultado da primeira cobranca.
+ */
+@Component
+public class StubPaymentGateway implements PaymentGateway {
+
+	public static final BigDecimal LIMIT = new BigDecimal("10000.00");
+
+	private final ConcurrentMap<String, PaymentResult> charges = new ConcurrentHashMap<>();
+	private volatile long latencyMillis = 300;
+
+	@Override
+	public PaymentResult charge(String idempotencyKey, BigDecimal amount) {
+		PaymentResult previous = charges.get(idempotencyKey);
+		if (previous != null) {
+			return previous;
+		}
+		try {
+			Thread.sleep(latencyMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Cobranca interrompida", e);
+		}
+		PaymentResult result = amount.compareTo(LIMIT) > 0
+				? PaymentResult.declined("Valor acima do limite do cartao")
+				: PaymentResult.approved(UUID.randomUUID().toString());
+		previous = charges.putIfAbsent(idempotencyKey, result);
+		return previous != null ? previous : result;
+	}
+
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+}
@@ -1,23 +1,167 @@
 package br.com.casadocodigo.loja.conf;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.ComponentScan;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.support.ServletContextResource;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.servlet.resource.CachingResourceResolver;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolver;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 
-import br.com.casadocodigo.lojacontrollers.HomeController;
+import br.com.casadocodigo.loja.cache.InstrumentedGuavaCache;
+import br.com.casadocodigo.loja.cache.InstrumentedGuavaCacheManager;
+import br.com.casadocodigo.loja.carts.CartIdInterceptor;
+import br.com.casadocodigo.loja.carts.CartScope;
+import br.com.casadocodigo.loja.carts.CartStore;
+import br.com.casadocodigo.loja.carts.MappedFileCartStore;
+import br.com.casadocodigo.loja.carts.WriteBehindCartStore;
+import br.com.casadocodigo.loja.cache.PageCacheFilter;
+import br.com.casadocodigo.loja.layout.LayoutViewResolver;
+import br.com.casadocodigo.loja.resources.StaticResourceHandler;
 
 @EnableWebMvc
-@ComponentScan(basePackageClasses=HomeController.class)
-public class AppWebConfiguration {
+@EnableCaching(order = AppWebConfiguration.CACHE_ADVICE_ORDER)
+// sem @ComponentScan: os componentes sao registrados pelo ServletSpringMVC a
+// partir do ComponentIndex
+public class AppWebConfiguration extends WebMvcConfigurerAdapter {
+
+	public static final String PRODUCTS_LIST_CACHE = "productsList";
+	public static final String PRODUCT_DETAIL_CACHE = "productDetail";
+	public static final String RENDERED_PAGES_CACHE = "renderedPages";
+	public static final String PRICE_TABLE_CACHE = "priceTable";
+
+	/**
+	 * O cache envolve a transacao: um hit nao abre transacao nem pega conexao,
+	 * e o valor so vai para o cache depois do commit.
+	 */
+	public static final int CACHE_ADVICE_ORDER = 0;
+	public static final int TRANSACTION_ADVICE_ORDER = 10;
 	
 	@Bean
 	public InternalResourceViewResolver internalResourceViewResolver (){
 		
-		InternalResourceViewResolver resolver = new InternalResourceViewResolver();
+		LayoutViewResolver resolver = new LayoutViewResolver("/WEB-INF/layout/page.html");
 		resolver.setPrefix("/WEB-INF/views/");
 		resolver.setSuffix(".jsp");
+		resolver.addLayout("products/show", "product");
 		
 		return resolver;
 	}
+
+	@Bean
+	public InstrumentedGuavaCacheManager cacheManager() {
+		Map<String, String> specifications = new HashMap<>();
+		specifications.put(PRODUCTS_LIST_CACHE, "maximumSize=100,expireAfterWrite=30m,recordStats");
+		specifications.put(PRODUCT_DETAIL_CACHE, "maximumSize=10000,expireAfterWrite=30m,recordStats");
+		specifications.put(RENDERED_PAGES_CACHE, "maximumSize=1000,expireAfterWrite=30m,recordStats");
+		specifications.put(PRICE_TABLE_CACHE, "maximumSize=1,expireAfterWrite=30m,recordStats");
+
+		InstrumentedGuavaCacheManager cacheManager = new InstrumentedGuavaCacheManager();
+		cacheManager.setCacheSpecifications(specifications);
+		cacheManager.setCacheNames(Arrays.asList(PRODUCTS_LIST_CACHE, PRODUCT_DETAIL_CACHE, RENDERED_PAGES_CACHE,
+				PRICE_TABLE_CACHE));
+		return cacheManager;
+	}
+
+	@Bean
+	public PageCacheFilter pageCacheFilter(CacheManager cacheManager) {
+		return new PageCacheFilter((InstrumentedGuavaCache) cacheManager.getCache(RENDERED_PAGES_CACHE),
+				Arrays.asList("/home", "/products/show/*"));
+	}
+
+	/**
+	 * /resources/** pelo StaticResourceHandler. O VersionResourceResolver poe
+	 * o hash do conteudo no nome do arquivo (loja.min.css vira
+	 * loja.min-&lt;md5&gt;.css nos c:url, via ResourceUrlEncodingFilter). O
+	 * CachingResourceResolver guarda o hash, calculado uma vez por arquivo.
+	 */
+	@Bean
+	public StaticResourceHandler staticResourceHandler(ServletContext servletContext) {
+		StaticResourceHandler handler = new StaticResourceHandler();
+		handler.setLocations(Arrays.<Resource> asList(new ServletContextResource(servletContext, "/resources/")));
+		handler.setResourceResolvers(Arrays.<ResourceResolver> asList(
+				new CachingResourceResolver(new ConcurrentMapCache("staticResources")),
+				new VersionResourceResolver().addContentVersionStrategy("/**"),
+				new PathResourceResolver()));
+		return handler;
+	}
+
+	@Bean
+	public SimpleUrlHandlerMapping staticResourceHandlerMapping(StaticResourceHandler staticResourceHandler) {
+		SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping();
+		mapping.setUrlMap(Collections.singletonMap("/resources/**", staticResourceHandler));
+		mapping.setOrder(Ordered.LOWEST_PRECEDENCE - 1);
+		return mapping;
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new CartIdInterceptor(true)).addPathPatterns("/shopping/**");
+		registry.addInterceptor(new CartIdInterceptor(false));
+	}
+
+	@Bean
+	public static BeanFactoryPostProcessor cartScope() {
+		return beanFactory -> beanFactory.registerScope(CartScope.NAME,
+				new CartScope(() -> beanFactory.getBean(CartStore.class)));
+	}
+
+	@Bean
+	public CartStore cartStore() throws IOException {
+		File file = new File(System.getProperty("java.io.tmpdir"), "casadocodigo-carts.dat");
+		return new WriteBehindCartStore(new MappedFileCartStore(file, 16384, 4096, TimeUnit.DAYS.toMillis(30)), 200,
+				4096);
+	}
+
+	@Bean
+	public MultipartResolver multipartResolver() {
+		return new StandardServletMultipartResolver();
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor productImportExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(2);
+		executor.setMaxPoolSize(2);
+		executor.setQueueCapacity(20);
+		executor.setThreadNamePrefix("product-import-");
+		return executor;
+	}
+
+	/**
+	 * Fila do checkout. Cheia, o pedido e recusado com 503 em vez de esperar
+	 * em uma thread do Tomcat.
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor checkoutExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(8);
+		executor.setMaxPoolSize(8);
+		executor.setQueueCapacity(200);
+		executor.setThreadNamePrefix("checkout-");
+		return executor;
+	}
 }
@@ -0,0 +1,71 @@
+package br.com.casadocodigo.loja.conf;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+
+import br.com.casadocodigo.loja.checkout.CheckoutService;
+import br.com.casadocodigo.loja.checkout.StubPaymentGateway;
+import br.com.casadocodigo.loja.daos.CatalogProductResolver;
+import br.com.casadocodigo.loja.daos.OrderDAO;
+import br.com.casadocodigo.loja.daos.ProductBatchDAO;
+import br.com.casadocodigo.loja.daos.ProductDAO;
+import br.com.casadocodigo.loja.importer.ProductImportService;
+import br.com.casadocodigo.loja.models.ShoppingCart;
+import br.com.casadocodigo.loja.search.ProductSearchIndex;
+import br.com.casadocodigo.lojacontrollers.CacheStatsController;
+import br.com.casadocodigo.lojacontrollers.CheckoutController;
+import br.com.casadocodigo.lojacontrollers.DataSourceStatsController;
+import br.com.casadocodigo.lojacontrollers.HomeController;
+import br.com.casadocodigo.lojacontrollers.ProductImportController;
+import br.com.casadocodigo.lojacontrollers.ProductsController;
+
+/**
+ * Lista fixa dos componentes da aplicacao, registrados direto no contexto
+ * no lugar do @ComponentScan. Assim a subida nao varre o classpath nem le
+ * o bytecode de cada classe procurando anotacoes.
+ *
+ * Componente novo precisa entrar aqui. Com
+ * -Dcasadocodigo.verifyComponentIndex=true a subida faz a varredura uma vez
+ * e falha se achar algum componente fora da lista.
+ */
+public final class ComponentIndex {
+
+	static final String BASE_PACKAGE = "br.com.casadocodigo";
+
+	public static final Class<?>[] COMPONENTS = {
+		CheckoutService.class,
+		StubPaymentGateway.class,
+		CatalogProductResolver.class,
+		OrderDAO.class,
+		ProductBatchDAO.class,
+		ProductDAO.class,
+		ProductImportService.class,
+		ShoppingCart.class,
+		ProductSearchIndex.class,
+		CacheStatsController.class,
+		CheckoutController.class,
+		DataSourceStatsController.class,
+		HomeController.class,
+		ProductImportController.class,
+		ProductsController.class
+	};
+
+	private ComponentIndex() {
+	}
+
+	public static void verify() {
+		ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(true);
+		Set<String> missing = new TreeSet<>();
+		for (BeanDefinition candidate : scanner.findCandidateComponents(BASE_PACKAGE)) {
+			missing.add(candidate.getBeanClassName());
+		}
+		Arrays.stream(COMPONENTS).map(Class::getName).forEach(missing::remove);
+		if (!missing.isEmpty()) {
+			throw new IllegalStateException("Componentes fora do ComponentIndex: " + missing);
+		}
+	}
+}
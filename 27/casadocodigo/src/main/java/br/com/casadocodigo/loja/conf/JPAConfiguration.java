@@ -0,0 +1,155 @@
+package br.com.casadocodigo.loja.conf;
+
+import java.sql.Connection;
+import java.util.Properties;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.JpaVendorAdapter;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import br.com.casadocodigo.loja.jdbc.MonitoredDataSource;
+import br.com.casadocodigo.loja.jdbc.ReadWriteRoutingDataSource;
+import br.com.casadocodigo.loja.jdbc.ReplicaLagMonitor;
+
+@EnableTransactionManagement(order = AppWebConfiguration.TRANSACTION_ADVICE_ORDER)
+public class JPAConfiguration {
+
+	private static final String PRIMARY_URL = "jdbc:mysql://localhost:3306/casadocodigo";
+	private static final String REPLICA_URL = "jdbc:mysql://localhost:3307/casadocodigo";
+	private static final long MAX_REPLICA_LAG_SECONDS = 5;
+	private static final long REPLICA_CHECK_INTERVAL_MILLIS = 5000;
+
+	/**
+	 * Com -Dcasadocodigo.replicaIsPrimary=true, em desenvolvimento, a URL da
+	 * replica pode apontar para o proprio primario, que nao tem status de
+	 * replica; sem isso esse servidor nunca recebe leituras.
+	 */
+	public static final String REPLICA_IS_PRIMARY_PROPERTY = "casadocodigo.replicaIsPrimary";
+
+	/**
+	 * Declarado como FactoryBean, e nao como o tipo concreto, porque o
+	 * contexto cria na subida todo bean LoadTimeWeaverAware, mesmo lazy, e
+	 * isso subiria o Hibernate no modo lazy (ver StartupMode).
+	 */
+	@Bean
+	public FactoryBean<EntityManagerFactory> entityManagerFactory(DataSource dataSource) {
+		LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
+		em.setDataSource(dataSource);
+		em.setPackagesToScan(new String[] { "br.com.casadocodigo.loja.models" });
+
+		JpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+		em.setJpaVendorAdapter(vendorAdapter);
+		em.setJpaProperties(additionalProperties());
+
+		return em;
+	}
+
+	/**
+	 * Leituras readOnly vao para a replica e o resto para o primario (ver
+	 * ReadWriteRoutingDataSource). O proxy adia o getConnection ate o
+	 * primeiro comando, quando ja se sabe se a transacao e readOnly.
+	 * Leituras que enchem um cache ou o indice de busca nao sao readOnly
+	 * (ver ProductDAO): o cache duraria mais que o atraso da replica.
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+		// valores padrao do MySQL, para o proxy nao abrir uma conexao so para
+		// descobri-los
+		dataSource.setDefaultAutoCommit(true);
+		dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+		return dataSource;
+	}
+
+	@Bean
+	public ReadWriteRoutingDataSource routingDataSource(
+			@Qualifier("primaryDataSource") MonitoredDataSource primaryDataSource,
+			@Qualifier("replicaDataSource") MonitoredDataSource replicaDataSource,
+			ReplicaLagMonitor replicaLagMonitor) {
+		return new ReadWriteRoutingDataSource(primaryDataSource, replicaDataSource, replicaLagMonitor);
+	}
+
+	@Bean
+	public ReplicaLagMonitor replicaLagMonitor(@Qualifier("replicaDataSource") MonitoredDataSource replicaDataSource) {
+		return new ReplicaLagMonitor(replicaDataSource, MAX_REPLICA_LAG_SECONDS, REPLICA_CHECK_INTERVAL_MILLIS,
+				Boolean.getBoolean(REPLICA_IS_PRIMARY_PROPERTY));
+	}
+
+	@Bean
+	public MonitoredDataSource primaryDataSource() {
+		return pooledDataSource(PRIMARY_URL);
+	}
+
+	@Bean
+	public MonitoredDataSource replicaDataSource() {
+		return pooledDataSource(REPLICA_URL);
+	}
+
+	/**
+	 * Pool do Tomcat JDBC no lugar do DriverManagerDataSource, que abria uma
+	 * conexao nova a cada transacao. O driver guarda os prepared statements
+	 * no servidor e os reaproveita por conexao; rewriteBatchedStatements junta
+	 * os inserts em lote (ProductBatchDAO) num unico insert de varias linhas.
+	 */
+	private MonitoredDataSource pooledDataSource(String url) {
+		PoolProperties pool = new PoolProperties();
+		pool.setDriverClassName("com.mysql.jdbc.Driver");
+		// useCursorFetch faz o driver respeitar o fetchSize em vez de trazer o
+		// resultado inteiro de uma vez
+		pool.setUrl(url + "?useCursorFetch=true"
+				+ "&useServerPrepStmts=true&cachePrepStmts=true"
+				+ "&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048"
+				+ "&rewriteBatchedStatements=true");
+		pool.setUsername("root");
+		pool.setPassword("");
+		// 8 threads de checkout, 2 de importacao e as requisicoes do Tomcat
+		pool.setInitialSize(5);
+		pool.setMinIdle(5);
+		pool.setMaxIdle(20);
+		pool.setMaxActive(20);
+		pool.setMaxWait(5000);
+		pool.setFairQueue(true);
+		pool.setTestOnBorrow(true);
+		pool.setValidationQuery("SELECT 1");
+		pool.setValidationInterval(30000);
+		pool.setTimeBetweenEvictionRunsMillis(30000);
+		pool.setMinEvictableIdleTimeMillis(60000);
+		pool.setJdbcInterceptors("ConnectionState;StatementFinalizer");
+		pool.setJmxEnabled(true);
+		return new MonitoredDataSource(new org.apache.tomcat.jdbc.pool.DataSource(pool));
+	}
+
+	private Properties additionalProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("hibernate.hbm2ddl.auto", "update");
+		properties.setProperty("hibernate.dialect", "org.hibernate.dialect.MySQL5Dialect");
+		properties.setProperty("hibernate.show_sql", "true");
+		return properties;
+	}
+
+	@Bean
+	public PlatformTransactionManager transactionManager(EntityManagerFactory emf) {
+		JpaTransactionManager transactionManager = new JpaTransactionManager();
+		transactionManager.setEntityManagerFactory(emf);
+		return transactionManager;
+	}
+
+	@Bean
+	public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+		return new JdbcTemplate(dataSource);
+	}
+}
@@ -1,9 +1,25 @@
 package br.com.casadocodigo.loja.conf;
 
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import javax.servlet.Filter;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.ServletRegistration.Dynamic;
+
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.filter.DelegatingFilterProxy;
+import org.springframework.web.servlet.FrameworkServlet;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
 //imports
 public class ServletSpringMVC extends AbstractAnnotationConfigDispatcherServletInitializer {
+
+	private static final long MAX_UPLOAD_SIZE = 50 * 1024 * 1024;
+	private static final int UPLOAD_MEMORY_THRESHOLD = 1024 * 1024;
+
 	@Override
 	protected Class<?>[] getRootConfigClasses() {
 		return null;
@@ -12,12 +28,56 @@ public class ServletSpringMVC extends AbstractAnnotationConfigDispatcherServletI
 	@Override
 	protected Class<?>[] getServletConfigClasses() {
 		// Tem que colocar aqui para ser adicionado no
-		// carregamento da servlet base
-		return new Class[] { AppWebConfiguration.class };
+		// carregamento da servlet base. Os componentes vem da lista fixa em
+		// vez de uma varredura do classpath
+		return Stream.concat(Stream.of(AppWebConfiguration.class, JPAConfiguration.class),
+				Arrays.stream(ComponentIndex.COMPONENTS)).toArray(Class<?>[]::new);
+	}
+
+	@Override
+	protected WebApplicationContext createServletApplicationContext() {
+		if (StartupMode.verifyComponentIndex()) {
+			ComponentIndex.verify();
+		}
+		AnnotationConfigWebApplicationContext context =
+				(AnnotationConfigWebApplicationContext) super.createServletApplicationContext();
+		StartupTimeline timeline = new StartupTimeline();
+		context.addBeanFactoryPostProcessor(beanFactory -> beanFactory.addBeanPostProcessor(timeline));
+		context.addApplicationListener(timeline);
+		if (StartupMode.isLazy()) {
+			// roda depois de lidas as classes de configuracao, entao pega
+			// tambem os @Bean
+			context.addBeanFactoryPostProcessor(beanFactory -> {
+				for (String name : beanFactory.getBeanDefinitionNames()) {
+					beanFactory.getBeanDefinition(name).setLazyInit(true);
+				}
+			});
+		}
+		return context;
 	}
 
 	@Override
 	protected String[] getServletMappings() {
 		return new String[] { "/" };
 	}
-}
\ No newline at end of file
+
+	@Override
+	protected Filter[] getServletFilters() {
+		// O filtro e um bean do contexto da servlet, ja que nao temos
+		// contexto raiz
+		DelegatingFilterProxy pageCacheFilter = new DelegatingFilterProxy("pageCacheFilter");
+		pageCacheFilter.setContextAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX + getServletName());
+		// troca os c:url de /resources pelo endereco com o hash do conteudo
+		return new Filter[] { pageCacheFilter, new ResourceUrlEncodingFilter() };
+	}
+
+	/**
+	 * Uploads acima de 1MB vao para um arquivo temporario em vez da memoria;
+	 * arquivos acima de 50MB sao recusados antes de lidos.
+	 */
+	@Override
+	protected void customizeRegistration(Dynamic registration) {
+		registration.setMultipartConfig(new MultipartConfigElement("", MAX_UPLOAD_SIZE, MAX_UPLOAD_SIZE + 1024 * 1024,
+				UPLOAD_MEMORY_THRESHOLD));
+	}
+}
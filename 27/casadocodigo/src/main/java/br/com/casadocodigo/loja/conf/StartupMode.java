@@ -0,0 +1,26 @@
+package br.com.casadocodigo.loja.conf;
+
+/**
+ * Modo de subida da aplicacao, escolhido por propriedade de sistema.
+ *
+ * Com -Dcasadocodigo.lazyInit=true os beans so sao criados quando alguem
+ * pede por eles (a primeira requisicao paga o custo) e o indice de busca e
+ * montado em segundo plano. Serve para subir rapido em desenvolvimento e
+ * em testes; em producao o padrao continua sendo criar tudo na subida.
+ */
+public final class StartupMode {
+
+	public static final String LAZY_INIT_PROPERTY = "casadocodigo.lazyInit";
+	public static final String VERIFY_INDEX_PROPERTY = "casadocodigo.verifyComponentIndex";
+
+	private StartupMode() {
+	}
+
+	public static boolean isLazy() {
+		return Boolean.getBoolean(LAZY_INIT_PROPERTY);
+	}
+
+	public static boolean verifyComponentIndex() {
+		return Boolean.getBoolean(VERIFY_INDEX_PROPERTY);
+	}
+}
@@ -0,0 +1,114 @@
+package br.com.casadocodigo.loja.conf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * Mede quanto cada bean leva para ser criado na subida, da instanciacao ate
+ * o fim da inicializacao (injecao, @PostConstruct, afterPropertiesSet). O
+ * tempo proprio desconta o das dependencias criadas no meio, para que o
+ * entityManagerFactory nao apareca de novo dentro de cada DAO.
+ *
+ * Ao fim da subida loga o total e os beans mais lentos; a linha do tempo
+ * completa sai em DEBUG. Depois disso para de medir, entao os beans criados
+ * sob demanda no modo lazy nao pagam nada.
+ */
+public class StartupTimeline extends InstantiationAwareBeanPostProcessorAdapter
+		implements ApplicationListener<ContextRefreshedEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(StartupTimeline.class);
+	private static final int SLOWEST = 10;
+
+	private final long startedAt = System.nanoTime();
+	private final ThreadLocal<Deque<Entry>> creating = ThreadLocal.withInitial(ArrayDeque::new);
+	private final List<Entry> entries = Collections.synchronizedList(new ArrayList<>());
+	private volatile boolean recording = true;
+
+	@Override
+	public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+		if (recording) {
+			creating.get().push(new Entry(beanName, System.nanoTime() - startedAt));
+		}
+		return null;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		Deque<Entry> stack = creating.get();
+		// o objeto de um FactoryBean passa por aqui de novo, fora da pilha
+		if (!recording || stack.stream().noneMatch(entry -> entry.beanName.equals(beanName))) {
+			return bean;
+		}
+		Entry entry = stack.pop();
+		// descarta o que ficou na pilha de uma criacao que falhou
+		while (!entry.beanName.equals(beanName)) {
+			entry = stack.pop();
+		}
+		entry.totalNanos = System.nanoTime() - startedAt - entry.startNanos;
+		if (!stack.isEmpty()) {
+			stack.peek().dependenciesNanos += entry.totalNanos;
+		}
+		entries.add(entry);
+		return bean;
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (!recording) {
+			return;
+		}
+		recording = false;
+		creating.remove();
+		long total = System.nanoTime() - startedAt;
+		List<Entry> timeline;
+		synchronized (entries) {
+			timeline = new ArrayList<>(entries);
+		}
+		logger.info("Contexto pronto em {} ms, {} beans criados{}", new Object[] { millis(total), timeline.size(),
+				StartupMode.isLazy() ? " (modo lazy)" : "" });
+		List<Entry> slowest = new ArrayList<>(timeline);
+		slowest.sort(Comparator.comparingLong(Entry::selfNanos).reversed());
+		for (Entry entry : slowest.subList(0, Math.min(SLOWEST, slowest.size()))) {
+			logger.info("  {} ms {}", millis(entry.selfNanos()), entry.beanName);
+		}
+		if (logger.isDebugEnabled()) {
+			timeline.sort(Comparator.comparingLong(entry -> entry.startNanos));
+			for (Entry entry : timeline) {
+				logger.debug("  +{} ms {} proprio {} ms, total {} ms", new Object[] { millis(entry.startNanos),
+						entry.beanName, millis(entry.selfNanos()), millis(entry.totalNanos) });
+			}
+		}
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	private static class Entry {
+		final String beanName;
+		final long startNanos;
+		long totalNanos;
+		long dependenciesNanos;
+
+		Entry(String beanName, long startNanos) {
+			this.beanName = beanName;
+			this.startNanos = startNanos;
+		}
+
+		long selfNanos() {
+			return totalNanos - dependenciesNanos;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package br.com.casadocodigo.loja.daos;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import br.com.casadocodigo.loja.models.CartCatalog;
+import br.com.casadocodigo.loja.models.PriceTable;
+import br.com.casadocodigo.loja.models.Product;
+
+/**
+ * Catalogo do carrinho sobre o ProductDAO (o proxy, com cache), injetado no
+ * ShoppingCart.
+ */
+@Component
+public class CatalogProductResolver implements CartCatalog {
+
+	@Autowired
+	private ProductDAO productDAO;
+
+	@Override
+	public PriceTable priceTable() {
+		return productDAO.priceTable();
+	}
+
+	@Override
+	public Product product(Integer id) {
+		return productDAO.find(id);
+	}
+}
@@ -0,0 +1,36 @@
+package br.com.casadocodigo.loja.daos;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.casadocodigo.loja.models.Order;
+
+@Repository
+@Transactional
+public class OrderDAO {
+
+	@PersistenceContext
+	private EntityManager manager;
+
+	public void save(Order order) {
+		manager.persist(order);
+	}
+
+	/**
+	 * Sem readOnly de proposito: a consulta vai ao primario, porque uma
+	 * replica atrasada esconderia um pedido recem gravado e o checkout
+	 * cobraria de novo.
+	 */
+	public Order findByIdempotencyKey(String idempotencyKey) {
+		List<Order> orders = manager
+				.createQuery("select o from Order o where o.idempotencyKey = :key", Order.class)
+				.setParameter("key", idempotencyKey)
+				.getResultList();
+		return orders.isEmpty() ? null : orders.get(0);
+	}
+}
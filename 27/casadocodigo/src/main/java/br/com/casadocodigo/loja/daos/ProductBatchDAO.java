@@ -0,0 +1,68 @@
+package br.com.casadocodigo.loja.daos;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.casadocodigo.loja.models.Price;
+import br.com.casadocodigo.loja.models.Product;
+import br.com.casadocodigo.loja.search.ProductSearchIndex;
+
+/**
+ * Gravacao de produtos em lote via JDBC, para importacoes grandes. Cada
+ * chamada de insert e uma transacao com um batch para os produtos e outro
+ * para os precos, em vez de um persist (e um round trip) por linha.
+ */
+@Repository
+@Transactional
+public class ProductBatchDAO {
+
+	private static final String INSERT_PRODUCT = "insert into Product (title, description, numberOfPages, summaryPath) values (?, ?, ?, ?)";
+	private static final String INSERT_PRICE = "insert into Product_prices (Product_id, bookType, value) values (?, ?, ?)";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ProductSearchIndex searchIndex;
+
+	public void insert(List<Product> products) {
+		jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+			try (PreparedStatement insert = connection.prepareStatement(INSERT_PRODUCT, Statement.RETURN_GENERATED_KEYS)) {
+				for (Product product : products) {
+					insert.setString(1, product.getTitle());
+					insert.setString(2, product.getDescription());
+					insert.setInt(3, product.getNumberOfPages());
+					insert.setString(4, product.getSummaryPath());
+					insert.addBatch();
+				}
+				insert.executeBatch();
+				try (ResultSet keys = insert.getGeneratedKeys()) {
+					for (int i = 0; keys.next(); i++) {
+						products.get(i).setId(keys.getInt(1));
+					}
+				}
+			}
+			try (PreparedStatement insert = connection.prepareStatement(INSERT_PRICE)) {
+				for (Product product : products) {
+					for (Price price : product.getPrices()) {
+						insert.setInt(1, product.getId());
+						insert.setInt(2, price.getBookType().ordinal());
+						insert.setBigDecimal(3, price.getValue());
+						insert.addBatch();
+					}
+				}
+				insert.executeBatch();
+			}
+			return null;
+		});
+		searchIndex.indexAfterCommit(products);
+	}
+}
@@ -0,0 +1,160 @@
+package br.com.casadocodigo.loja.daos;
+
+import static br.com.casadocodigo.loja.conf.AppWebConfiguration.PRICE_TABLE_CACHE;
+import static br.com.casadocodigo.loja.conf.AppWebConfiguration.PRODUCTS_LIST_CACHE;
+import static br.com.casadocodigo.loja.conf.AppWebConfiguration.PRODUCT_DETAIL_CACHE;
+import static br.com.casadocodigo.loja.conf.AppWebConfiguration.RENDERED_PAGES_CACHE;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.casadocodigo.loja.models.BookType;
+import br.com.casadocodigo.loja.models.Price;
+import br.com.casadocodigo.loja.models.PriceTable;
+import br.com.casadocodigo.loja.models.Product;
+import br.com.casadocodigo.loja.models.ProductPage;
+import br.com.casadocodigo.loja.search.ProductSearchIndex;
+
+@Repository
+@Transactional
+public class ProductDAO {
+
+	private static final int SCROLL_FETCH_SIZE = 500;
+
+	@PersistenceContext
+	private EntityManager manager;
+
+	@Autowired
+	private ProductSearchIndex searchIndex;
+
+	@Caching(evict = {
+			@CacheEvict(value = PRODUCTS_LIST_CACHE, allEntries = true),
+			@CacheEvict(value = PRODUCT_DETAIL_CACHE, key = "#product.id"),
+			@CacheEvict(value = PRICE_TABLE_CACHE, allEntries = true),
+			@CacheEvict(value = RENDERED_PAGES_CACHE, allEntries = true) })
+	public void save(Product product) {
+		manager.persist(product);
+		searchIndex.indexAfterCommit(Collections.singletonList(product));
+	}
+
+	/**
+	 * Sem readOnly, como tudo que enche um cache: lida de uma replica
+	 * atrasada logo depois de um save, a lista antiga voltaria para o cache
+	 * recem limpo e ficaria la ate expirar.
+	 */
+	@Cacheable(PRODUCTS_LIST_CACHE)
+	public List<Product> list() {
+		return manager
+				.createQuery("select p from Product p order by p.id", Product.class)
+				.getResultList();
+	}
+
+	/**
+	 * Produto inexistente nao vai para o cache: um id pedido antes do
+	 * produto ser gravado nao pode ficar respondendo null. Lido do primario,
+	 * pelo mesmo motivo de {@link #list()}; a pagina do produto, guardada no
+	 * RENDERED_PAGES_CACHE, e montada a partir deste objeto.
+	 */
+	@Cacheable(value = PRODUCT_DETAIL_CACHE, unless = "#result == null")
+	public Product find(Integer id) {
+		return manager.find(Product.class, id);
+	}
+
+	/**
+	 * Todos os precos do catalogo em uma tabela so, montada com uma consulta
+	 * e guardada em cache ate o proximo produto gravado. A versao vem do
+	 * conteudo (ver PriceTable), entao so muda se algum preco mudou.
+	 *
+	 * Sem readOnly, para ler do primario: montada de uma replica atrasada
+	 * logo depois de um save, a tabela ficaria em cache com os precos
+	 * antigos e uma versao nova.
+	 */
+	@Cacheable(PRICE_TABLE_CACHE)
+	public PriceTable priceTable() {
+		PriceTable.Builder builder = new PriceTable.Builder();
+		List<Object[]> rows = manager
+				.createQuery("select p.id, price.bookType, price.value from Product p join p.prices price order by p.id",
+						Object[].class)
+				.getResultList();
+		for (Object[] row : rows) {
+			builder.add((Integer) row[0], (BookType) row[1], (BigDecimal) row[2]);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Pagina por chave: os size produtos com id maior que after, sem OFFSET,
+	 * entao o custo de qualquer pagina e o mesmo da primeira.
+	 */
+	@Transactional(readOnly = true)
+	public ProductPage listAfter(Integer after, int size) {
+		List<Product> products = manager
+				.createQuery("select p from Product p where p.id > :after order by p.id", Product.class)
+				.setParameter("after", after == null ? 0 : after)
+				.setMaxResults(size)
+				.getResultList();
+		Integer next = products.size() < size ? null : products.get(products.size() - 1).getId();
+		return new ProductPage(products, next);
+	}
+
+	/**
+	 * Percorre o catalogo inteiro com um cursor, sem carregar entidades nem
+	 * guardar a lista em memoria. Cada linha do join com os precos e
+	 * agrupada no produto dela e o produto e entregue ao handler assim que a
+	 * proxima linha for de outro id.
+	 *
+	 * Le do primario: o indice de busca e trocado inteiro pelo resultado, e
+	 * uma replica atrasada apagaria dele os produtos gravados nos ultimos
+	 * segundos, ja indexados depois do commit.
+	 */
+	public void scrollAll(ProductHandler handler) throws IOException {
+		ScrollableResults results = manager.unwrap(Session.class)
+				.createQuery("select p.id, p.title, p.description, p.numberOfPages, price.bookType, price.value "
+						+ "from Product p left join p.prices price order by p.id")
+				.setFetchSize(SCROLL_FETCH_SIZE)
+				.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			Product current = null;
+			while (results.next()) {
+				Object[] row = results.get();
+				Integer id = (Integer) row[0];
+				if (current == null || !current.getId().equals(id)) {
+					if (current != null) {
+						handler.handle(current);
+					}
+					current = new Product();
+					current.setId(id);
+					current.setTitle((String) row[1]);
+					current.setDescription((String) row[2]);
+					current.setNumberOfPages((Integer) row[3]);
+				}
+				if (row[4] != null) {
+					Price price = new Price();
+					price.setBookType((BookType) row[4]);
+					price.setValue((BigDecimal) row[5]);
+					current.getPrices().add(price);
+				}
+			}
+			if (current != null) {
+				handler.handle(current);
+			}
+		} finally {
+			results.close();
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package br.com.casadocodigo.loja.daos;
+
+import java.io.IOException;
+
+import br.com.casadocodigo.loja.models.Product;
+
+/**
+ * Recebe os produtos um a um enquanto sao lidos do banco por
+ * {@link ProductDAO#scrollAll(ProductHandler)}.
+ */
+public interface ProductHandler {
+
+	void handle(Product product) throws IOException;
+}
@@ -0,0 +1,182 @@
+package br.com.casadocodigo.loja.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import br.com.casadocodigo.loja.models.BookType;
+import br.com.casadocodigo.loja.models.Price;
+import br.com.casadocodigo.loja.models.Product;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Le o arquivo de importacao de produtos. Arquivos .json sao um array de
+ * produtos no mesmo formato da exportacao; os demais sao CSV com cabecalho:
+ *
+ * <pre>
+ * title,description,numberOfPages,EBOOK,IMPRESSO,COMBO
+ * </pre>
+ *
+ * As colunas de preco sao opcionais. Campos podem vir entre aspas, com
+ * virgulas e quebras de linha dentro. Uma linha que nao pode ser lida vira
+ * um erro daquela linha, sem interromper as demais.
+ *
+ * O arquivo e lido aos poucos e cada linha e entregue assim que lida, entao
+ * so um produto por vez fica em memoria.
+ */
+public class ProductFileReader {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	public void read(String fileName, InputStream content, Consumer<ProductImportRow> rows) throws IOException {
+		if (fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".json")) {
+			readJson(content, rows);
+		} else {
+			readCsv(content, rows);
+		}
+	}
+
+	private void readJson(InputStream content, Consumer<ProductImportRow> rows) throws IOException {
+		JsonParser parser = mapper.getFactory().createParser(content);
+		if (parser.nextToken() != JsonToken.START_ARRAY) {
+			throw new IOException("O arquivo JSON deve ser um array de produtos");
+		}
+		int line = 0;
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			line++;
+			JsonNode node = mapper.readTree(parser);
+			try {
+				rows.accept(ProductImportRow.of(line, mapper.treeToValue(node, Product.class)));
+			} catch (JsonProcessingException e) {
+				rows.accept(ProductImportRow.invalid(line, e.getOriginalMessage()));
+			}
+		}
+	}
+
+	private void readCsv(InputStream content, Consumer<ProductImportRow> rows) throws IOException {
+		CsvRecords records = new CsvRecords(content);
+		List<String> header = records.next();
+		if (header == null) {
+			return;
+		}
+		Map<String, Integer> columns = new HashMap<>();
+		for (int i = 0; i < header.size(); i++) {
+			columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+		}
+		for (String required : new String[] { "title", "description", "numberofpages" }) {
+			if (!columns.containsKey(required)) {
+				throw new IOException("Coluna obrigatoria ausente no cabecalho: " + required);
+			}
+		}
+
+		int line = 1;
+		for (List<String> record = records.next(); record != null; record = records.next()) {
+			line++;
+			String numberOfPages = field(record, columns.get("numberofpages"));
+			if (numberOfPages == null) {
+				rows.accept(ProductImportRow.invalid(line, "Linha com menos colunas que o cabecalho"));
+				continue;
+			}
+			try {
+				Product product = new Product();
+				product.setTitle(field(record, columns.get("title")));
+				product.setDescription(field(record, columns.get("description")));
+				product.setNumberOfPages(Integer.parseInt(numberOfPages.trim()));
+				for (BookType bookType : BookType.values()) {
+					Integer column = columns.get(bookType.name().toLowerCase(Locale.ROOT));
+					String value = column == null ? null : field(record, column);
+					if (value != null && !value.trim().isEmpty()) {
+						Price price = new Price();
+						price.setBookType(bookType);
+						price.setValue(new BigDecimal(value.trim()));
+						product.getPrices().add(price);
+					}
+				}
+				rows.accept(ProductImportRow.of(line, product));
+			} catch (NumberFormatException e) {
+				rows.accept(ProductImportRow.invalid(line, "Numero invalido: " + e.getMessage()));
+			}
+		}
+	}
+
+	private String field(List<String> record, int column) {
+		return column < record.size() ? record.get(column) : null;
+	}
+
+	/**
+	 * Registros do CSV, um por vez. Registros vazios sao pulados.
+	 */
+	private static class CsvRecords {
+
+		private final PushbackReader reader;
+
+		CsvRecords(InputStream content) {
+			this.reader = new PushbackReader(new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8)));
+		}
+
+		List<String> next() throws IOException {
+			List<String> record = new ArrayList<>();
+			StringBuilder field = new StringBuilder();
+			boolean quoted = false;
+			int c;
+			while ((c = reader.read()) != -1) {
+				if (quoted) {
+					if (c == '"') {
+						int next = reader.read();
+						if (next == '"') {
+							field.append('"');
+						} else {
+							quoted = false;
+							unread(next);
+						}
+					} else {
+						field.append((char) c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					record.add(field.toString());
+					field.setLength(0);
+				} else if (c == '\n' || c == '\r') {
+					if (c == '\r') {
+						int next = reader.read();
+						if (next != '\n') {
+							unread(next);
+						}
+					}
+					record.add(field.toString());
+					field.setLength(0);
+					if (record.size() > 1 || !record.get(0).isEmpty()) {
+						return record;
+					}
+					record.clear();
+				} else {
+					field.append((char) c);
+				}
+			}
+			record.add(field.toString());
+			return record.size() > 1 || !record.get(0).isEmpty() ? record : null;
+		}
+
+		private void unread(int c) throws IOException {
+			if (c != -1) {
+				reader.unread(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package br.com.casadocodigo.loja.importer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Andamento de uma importacao, consultado pelo cliente enquanto ela roda.
+ * Guarda no maximo MAX_ERRORS erros; os demais so entram na contagem. Como o
+ * arquivo e lido aos poucos, o total de linhas so e conhecido no fim; ate
+ * la, totalRows e zero.
+ */
+public class ProductImportJob {
+
+	public enum Status {
+		QUEUED, RUNNING, DONE, FAILED
+	}
+
+	private static final int MAX_ERRORS = 1000;
+
+	private final String id = UUID.randomUUID().toString();
+	private final String fileName;
+	private volatile Status status = Status.QUEUED;
+	private volatile String failure;
+	private volatile int totalRows;
+	private final AtomicInteger processedRows = new AtomicInteger();
+	private final AtomicInteger importedRows = new AtomicInteger();
+	private final AtomicInteger errorCount = new AtomicInteger();
+	private final List<RowError> errors = new ArrayList<>();
+
+	public ProductImportJob(String fileName) {
+		this.fileName = fileName;
+	}
+
+	void start() {
+		this.status = Status.RUNNING;
+	}
+
+	void processed(int rows, int imported) {
+		processedRows.addAndGet(rows);
+		importedRows.addAndGet(imported);
+	}
+
+	void error(int line, String message) {
+		errorCount.incrementAndGet();
+		synchronized (errors) {
+			if (errors.size() < MAX_ERRORS) {
+				errors.add(new RowError(line, message));
+			}
+		}
+	}
+
+	void finish() {
+		totalRows = processedRows.get();
+		status = Status.DONE;
+	}
+
+	void fail(String failure) {
+		this.failure = failure;
+		this.status = Status.FAILED;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getFailure() {
+		return failure;
+	}
+
+	public int getTotalRows() {
+		return totalRows;
+	}
+
+	public int getProcessedRows() {
+		return processedRows.get();
+	}
+
+	public int getImportedRows() {
+		return importedRows.get();
+	}
+
+	public int getErrorCount() {
+		return errorCount.get();
+	}
+
+	public List<RowError> getErrors() {
+		synchronized (errors) {
+			return new ArrayList<>(errors);
+		}
+	}
+
+	public static class RowError {
+
+		private final int line;
+		private final String message;
+
+		RowError(int line, String message) {
+			this.line = line;
+			this.message = message;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package br.com.casadocodigo.loja.importer;
+
+import br.com.casadocodigo.loja.models.Product;
+
+/**
+ * Uma linha do arquivo de importacao: o produto lido ou o erro de leitura.
+ */
+public class ProductImportRow {
+
+	private final int line;
+	private final Product product;
+	private final String error;
+
+	private ProductImportRow(int line, Product product, String error) {
+		this.line = line;
+		this.product = product;
+		this.error = error;
+	}
+
+	public static ProductImportRow of(int line, Product product) {
+		return new ProductImportRow(line, product, null);
+	}
+
+	public static ProductImportRow invalid(int line, String error) {
+		return new ProductImportRow(line, null, error);
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public Product getProduct() {
+		return product;
+	}
+
+	public String getError() {
+		return error;
+	}
+}
@@ -0,0 +1,147 @@
+package br.com.casadocodigo.loja.importer;
+
+import static br.com.casadocodigo.loja.conf.AppWebConfiguration.PRICE_TABLE_CACHE;
+import static br.com.casadocodigo.loja.conf.AppWebConfiguration.PRODUCTS_LIST_CACHE;
+import static br.com.casadocodigo.loja.conf.AppWebConfiguration.PRODUCT_DETAIL_CACHE;
+import static br.com.casadocodigo.loja.conf.AppWebConfiguration.RENDERED_PAGES_CACHE;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import br.com.casadocodigo.loja.daos.ProductBatchDAO;
+import br.com.casadocodigo.loja.models.Product;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Importacao de catalogos inteiros em segundo plano. O arquivo, ja gravado
+ * em disco pelo upload, e lido aos poucos, cada produto validado e os
+ * validos sao gravados em lotes de chunkSize. O arquivo e apagado no fim. O
+ * andamento fica em um {@link ProductImportJob}, mantido por uma hora
+ * depois da ultima consulta.
+ */
+@Service
+public class ProductImportService {
+
+	@Autowired
+	private ProductBatchDAO productBatchDAO;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	@Qualifier("productImportExecutor")
+	private TaskExecutor executor;
+
+	private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+	private final ProductFileReader reader = new ProductFileReader();
+	private final Cache<String, ProductImportJob> jobs = CacheBuilder.newBuilder()
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build();
+
+	/**
+	 * Enfileira a importacao de content, que passa a ser desta classe e e
+	 * apagado depois de lido (ou se a fila recusar a importacao).
+	 */
+	public ProductImportJob submit(String fileName, File content, int chunkSize) {
+		ProductImportJob job = new ProductImportJob(fileName);
+		jobs.put(job.getId(), job);
+		try {
+			executor.execute(() -> run(job, content, chunkSize));
+		} catch (RuntimeException e) {
+			jobs.invalidate(job.getId());
+			content.delete();
+			throw e;
+		}
+		return job;
+	}
+
+	public ProductImportJob find(String id) {
+		return jobs.getIfPresent(id);
+	}
+
+	private void run(ProductImportJob job, File content, int chunkSize) {
+		List<Product> chunk = new ArrayList<>(chunkSize);
+		List<Integer> lines = new ArrayList<>(chunkSize);
+		try (InputStream in = new BufferedInputStream(new FileInputStream(content))) {
+			job.start();
+			reader.read(job.getFileName(), in, row -> {
+				String error = row.getError() != null ? row.getError() : validate(row.getProduct());
+				if (error != null) {
+					job.error(row.getLine(), error);
+					job.processed(1, 0);
+					return;
+				}
+				chunk.add(row.getProduct());
+				lines.add(row.getLine());
+				if (chunk.size() == chunkSize) {
+					write(job, chunk, lines);
+				}
+			});
+			write(job, chunk, lines);
+			job.finish();
+		} catch (IOException | RuntimeException e) {
+			job.fail(e.getMessage());
+		} finally {
+			content.delete();
+			if (job.getImportedRows() > 0) {
+				cacheManager.getCache(PRODUCTS_LIST_CACHE).clear();
+				cacheManager.getCache(PRODUCT_DETAIL_CACHE).clear();
+				cacheManager.getCache(RENDERED_PAGES_CACHE).clear();
+				cacheManager.getCache(PRICE_TABLE_CACHE).clear();
+			}
+		}
+	}
+
+	private String validate(Product product) {
+		Set<ConstraintViolation<Product>> violations = validator.validate(product);
+		if (violations.isEmpty()) {
+			return null;
+		}
+		StringBuilder message = new StringBuilder();
+		for (ConstraintViolation<Product> violation : violations) {
+			if (message.length() > 0) {
+				message.append("; ");
+			}
+			message.append(violation.getPropertyPath()).append(' ').append(violation.getMessage());
+		}
+		return message.toString();
+	}
+
+	private void write(ProductImportJob job, List<Product> chunk, List<Integer> lines) {
+		if (chunk.isEmpty()) {
+			return;
+		}
+		try {
+			productBatchDAO.insert(chunk);
+			job.processed(chunk.size(), chunk.size());
+		} catch (DataAccessException e) {
+			String message = "Lote nao gravado: " + e.getMostSpecificCause().getMessage();
+			for (Integer line : lines) {
+				job.error(line, message);
+			}
+			job.processed(chunk.size(), 0);
+		}
+		chunk.clear();
+		lines.clear();
+	}
+}
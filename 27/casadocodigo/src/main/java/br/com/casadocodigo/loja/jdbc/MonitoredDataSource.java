@@ -0,0 +1,98 @@
+package br.com.casadocodigo.loja.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolExhaustedException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Envolve o pool de conexoes e mede quanto tempo cada getConnection espera
+ * por uma conexao livre. Junto com os numeros do proprio pool (ativas,
+ * ociosas, threads na fila) isso mostra se o pool esta pequeno demais.
+ *
+ * O close fecha o pool, para que o Spring o encerre junto com o contexto.
+ */
+public class MonitoredDataSource extends DelegatingDataSource {
+
+	private final DataSource pool;
+
+	private final LongAdder acquired = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+
+	public MonitoredDataSource(DataSource pool) {
+		super(pool);
+		this.pool = pool;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			Connection connection = super.getConnection();
+			record(System.nanoTime() - start);
+			return connection;
+		} catch (PoolExhaustedException e) {
+			timeouts.increment();
+			throw e;
+		} catch (SQLException e) {
+			failures.increment();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			Connection connection = super.getConnection(username, password);
+			record(System.nanoTime() - start);
+			return connection;
+		} catch (PoolExhaustedException e) {
+			timeouts.increment();
+			throw e;
+		} catch (SQLException e) {
+			failures.increment();
+			throw e;
+		}
+	}
+
+	private void record(long nanos) {
+		acquired.increment();
+		waitNanos.add(nanos);
+		maxWaitNanos.accumulate(nanos);
+	}
+
+	public DataSource getPool() {
+		return pool;
+	}
+
+	public Map<String, Object> stats() {
+		long count = acquired.sum();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("active", pool.getActive());
+		stats.put("idle", pool.getIdle());
+		stats.put("size", pool.getSize());
+		stats.put("maxActive", pool.getMaxActive());
+		stats.put("waiting", pool.getWaitCount());
+		stats.put("acquired", count);
+		stats.put("averageWaitMicros", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / count));
+		stats.put("maxWaitMicros", TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()));
+		stats.put("timeouts", timeouts.sum());
+		stats.put("failures", failures.sum());
+		return stats;
+	}
+
+	public void close() {
+		pool.close();
+	}
+}
@@ -0,0 +1,76 @@
+package br.com.casadocodigo.loja.jdbc;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Manda transacoes readOnly para a replica e o resto para o primario. Se o
+ * ReplicaLagMonitor disser que a replica esta atrasada ou fora do ar, as
+ * leituras tambem vao para o primario.
+ *
+ * O JpaTransactionManager pede a conexao antes de marcar a transacao como
+ * readOnly, entao este DataSource precisa ficar atras de um
+ * LazyConnectionDataSourceProxy, que so busca a conexao no primeiro
+ * comando.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+	private static final String PRIMARY = "primary";
+	private static final String REPLICA = "replica";
+
+	private final MonitoredDataSource primary;
+	private final MonitoredDataSource replica;
+	private final ReplicaLagMonitor lagMonitor;
+
+	private final LongAdder primaryConnections = new LongAdder();
+	private final LongAdder replicaConnections = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+
+	public ReadWriteRoutingDataSource(MonitoredDataSource primary, MonitoredDataSource replica,
+			ReplicaLagMonitor lagMonitor) {
+		this.primary = primary;
+		this.replica = replica;
+		this.lagMonitor = lagMonitor;
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(PRIMARY, primary);
+		targets.put(REPLICA, replica);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			if (lagMonitor.isUsable()) {
+				replicaConnections.increment();
+				return REPLICA;
+			}
+			fallbacks.increment();
+		}
+		primaryConnections.increment();
+		return PRIMARY;
+	}
+
+	public Map<String, Map<String, Object>> stats() {
+		Map<String, Object> primaryStats = new LinkedHashMap<>();
+		primaryStats.put("connections", primaryConnections.sum());
+		primaryStats.put("readFallbacks", fallbacks.sum());
+		primaryStats.putAll(primary.stats());
+
+		Map<String, Object> replicaStats = new LinkedHashMap<>();
+		replicaStats.put("connections", replicaConnections.sum());
+		replicaStats.put("usable", lagMonitor.isUsable());
+		replicaStats.put("lagSeconds", lagMonitor.getLagSeconds());
+		replicaStats.putAll(replica.stats());
+
+		Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+		stats.put(PRIMARY, primaryStats);
+		stats.put(REPLICA, replicaStats);
+		return stats;
+	}
+}
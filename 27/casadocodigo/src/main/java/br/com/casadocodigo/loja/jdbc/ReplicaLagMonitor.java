@@ -0,0 +1,112 @@
+package br.com.casadocodigo.loja.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consulta o atraso da replica a cada checkIntervalMillis. A replica so
+ * recebe leituras enquanto responde e esta no maximo maxLagSeconds atras do
+ * primario; replicacao parada conta como atraso infinito.
+ *
+ * Um servidor sem status de replica tambem fica sem leituras: pode ser uma
+ * replica que perdeu a configuracao e nao recebe mais nada do primario. So
+ * com replicaIsPrimary, para desenvolvimento com um banco so, o servidor sem
+ * status e tratado como o proprio primario, sem atraso.
+ *
+ * Ate a primeira consulta a replica e considerada indisponivel.
+ */
+public class ReplicaLagMonitor {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+	public static final long UNKNOWN_LAG = -1;
+
+	private static final String STATUS_QUERY = "SHOW SLAVE STATUS";
+
+	private final DataSource replica;
+	private final long maxLagSeconds;
+	private final boolean replicaIsPrimary;
+	private final String statusQuery;
+	private final ScheduledExecutorService checker;
+
+	private volatile boolean usable;
+	private volatile long lagSeconds = UNKNOWN_LAG;
+
+	public ReplicaLagMonitor(DataSource replica, long maxLagSeconds, long checkIntervalMillis,
+			boolean replicaIsPrimary) {
+		this(replica, maxLagSeconds, checkIntervalMillis, replicaIsPrimary, STATUS_QUERY);
+	}
+
+	/**
+	 * Com outra consulta de status, para os testes, que rodam sobre um banco
+	 * sem SHOW SLAVE STATUS.
+	 */
+	ReplicaLagMonitor(DataSource replica, long maxLagSeconds, long checkIntervalMillis, boolean replicaIsPrimary,
+			String statusQuery) {
+		this.replica = replica;
+		this.maxLagSeconds = maxLagSeconds;
+		this.replicaIsPrimary = replicaIsPrimary;
+		this.statusQuery = statusQuery;
+		this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replica-lag-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		checker.scheduleWithFixedDelay(this::check, 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public boolean isUsable() {
+		return usable;
+	}
+
+	public long getLagSeconds() {
+		return lagSeconds;
+	}
+
+	void check() {
+		long lag;
+		try {
+			lag = queryLag();
+		} catch (SQLException | RuntimeException e) {
+			if (usable) {
+				logger.warn("Replica indisponivel, leituras vao para o primario", e);
+			}
+			lagSeconds = UNKNOWN_LAG;
+			usable = false;
+			return;
+		}
+		boolean nowUsable = lag != UNKNOWN_LAG && lag <= maxLagSeconds;
+		if (usable != nowUsable) {
+			logger.info(nowUsable ? "Replica em dia, voltando a receber leituras"
+					: "Replica " + (lag == UNKNOWN_LAG ? "parada ou sem replicacao" : lag + "s atrasada") + ", leituras vao para o primario");
+		}
+		lagSeconds = lag;
+		usable = nowUsable;
+	}
+
+	private long queryLag() throws SQLException {
+		try (Connection connection = replica.getConnection();
+				Statement statement = connection.createStatement();
+				ResultSet status = statement.executeQuery(statusQuery)) {
+			if (!status.next()) {
+				return replicaIsPrimary ? 0 : UNKNOWN_LAG;
+			}
+			long lag = status.getLong("Seconds_Behind_Master");
+			return status.wasNull() ? UNKNOWN_LAG : lag;
+		}
+	}
+
+	public void close() {
+		checker.shutdownNow();
+	}
+}
@@ -0,0 +1,125 @@
+package br.com.casadocodigo.loja.layout;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.web.servlet.view.JstlView;
+
+import br.com.casadocodigo.loja.carts.CartIdInterceptor;
+import br.com.casadocodigo.loja.models.ShoppingCart;
+
+/**
+ * JSP dentro do {@link PageLayout}. O cabecalho vai direto para o
+ * OutputStream da resposta, ja em bytes; o JSP so gera o miolo da pagina,
+ * incluido com um Writer UTF-8 sobre o mesmo OutputStream; depois vai o
+ * rodape.
+ *
+ * O titulo vem do atributo "title" do model; sem ele, fica o nome da loja.
+ */
+public class LayoutView extends JstlView {
+
+	public static final String TITLE = "title";
+
+	private static final String DEFAULT_TITLE = "Casa do C\u00f3digo";
+
+	private final PageLayout layout;
+	private final String bodyClass;
+
+	public LayoutView(PageLayout layout, String bodyClass) {
+		this.layout = layout;
+		this.bodyClass = bodyClass;
+	}
+
+	@Override
+	protected void renderMergedOutputModel(Map<String, Object> model, HttpServletRequest request,
+			HttpServletResponse response) throws Exception {
+		exposeModelAsRequestAttributes(model, request);
+		exposeHelpers(request);
+		String dispatcherPath = prepareForRendering(request, response);
+		RequestDispatcher dispatcher = getRequestDispatcher(request, dispatcherPath);
+		if (dispatcher == null) {
+			throw new IllegalStateException("Nao foi possivel obter o RequestDispatcher de " + getUrl());
+		}
+
+		Map<String, String> slots = slots(model, request, response);
+		response.setContentType("text/html;charset=UTF-8");
+		ServletOutputStream out = response.getOutputStream();
+		layout.writeHead(out, slots);
+		BodyResponse body = new BodyResponse(response, out);
+		dispatcher.include(request, body);
+		body.flushWriter();
+		layout.writeFooter(out, slots);
+	}
+
+	private Map<String, String> slots(Map<String, Object> model, HttpServletRequest request,
+			HttpServletResponse response) {
+		String contextPath = request.getContextPath();
+		Object title = model.get(TITLE);
+		Map<String, String> slots = new HashMap<>();
+		slots.put("title", title != null ? title.toString() : DEFAULT_TITLE);
+		slots.put("bodyClass", bodyClass);
+		slots.put("css", response.encodeURL(contextPath + "/resources/css/loja.min.css"));
+		slots.put("shoppingCartUrl", response.encodeURL(contextPath + "/shopping"));
+		slots.put("cartQuantity", String.valueOf(cartQuantity(request)));
+		return slots;
+	}
+
+	// sem carrinho na requisicao nao ha o que buscar, e nem criar um
+	private int cartQuantity(HttpServletRequest request) {
+		if (!CartIdInterceptor.hasCart(request)) {
+			return 0;
+		}
+		return getApplicationContext().getBean(ShoppingCart.class).getQuantity();
+	}
+
+	/**
+	 * Resposta para o include do JSP: o Writer escreve em UTF-8 no mesmo
+	 * OutputStream do cabecalho, em vez de pedir o getWriter da resposta, que
+	 * nao pode ser usado depois do getOutputStream.
+	 */
+	private static class BodyResponse extends HttpServletResponseWrapper {
+
+		private final ServletOutputStream out;
+		private PrintWriter writer;
+
+		BodyResponse(HttpServletResponse response, ServletOutputStream out) {
+			super(response);
+			this.out = out;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			return out;
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			}
+			return writer;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			flushWriter();
+			super.flushBuffer();
+		}
+
+		void flushWriter() {
+			if (writer != null) {
+				writer.flush();
+			}
+		}
+	}
+}
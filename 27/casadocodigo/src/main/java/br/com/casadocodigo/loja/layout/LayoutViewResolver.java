@@ -0,0 +1,62 @@
+package br.com.casadocodigo.loja.layout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.view.AbstractUrlBasedView;
+import org.springframework.web.servlet.view.InternalResourceViewResolver;
+
+/**
+ * InternalResourceViewResolver que monta as views registradas em
+ * {@link #addLayout} como {@link LayoutView}. O template do layout e lido e
+ * convertido uma vez, quando o resolver recebe o ServletContext na subida;
+ * um template ausente ou invalido impede a subida em vez de falhar na
+ * primeira pagina.
+ */
+public class LayoutViewResolver extends InternalResourceViewResolver {
+
+	private final String template;
+	private final Map<String, String> bodyClasses = new HashMap<>();
+	private PageLayout layout;
+
+	public LayoutViewResolver(String template) {
+		this.template = template;
+	}
+
+	/**
+	 * Usa o layout na view, com bodyClass na tag body.
+	 */
+	public void addLayout(String viewName, String bodyClass) {
+		bodyClasses.put(viewName, bodyClass);
+	}
+
+	@Override
+	protected AbstractUrlBasedView buildView(String viewName) throws Exception {
+		String bodyClass = bodyClasses.get(viewName);
+		if (bodyClass == null) {
+			return super.buildView(viewName);
+		}
+		LayoutView view = new LayoutView(layout, bodyClass);
+		view.setUrl(getPrefix() + viewName + getSuffix());
+		return view;
+	}
+
+	@Override
+	protected void initServletContext(ServletContext servletContext) {
+		super.initServletContext(servletContext);
+		try (InputStream in = servletContext.getResourceAsStream(template)) {
+			if (in == null) {
+				throw new IllegalStateException("Layout nao encontrado: " + template);
+			}
+			layout = PageLayout.parse(StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new IllegalStateException("Nao foi possivel ler o layout " + template, e);
+		}
+	}
+}
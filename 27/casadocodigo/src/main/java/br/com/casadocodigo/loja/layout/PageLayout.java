@@ -0,0 +1,81 @@
+package br.com.casadocodigo.loja.layout;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.web.util.HtmlUtils;
+
+/**
+ * Cabecalho e rodape comuns das paginas, lidos de um template HTML com
+ * lacunas {{nome}}. O texto fixo entre as lacunas e convertido para bytes
+ * UTF-8 uma vez so; a cada pagina so os valores das lacunas sao escapados e
+ * codificados. A lacuna {{body}} separa o cabecalho do rodape.
+ */
+public class PageLayout {
+
+	public static final String BODY = "body";
+
+	private static final Pattern SLOT = Pattern.compile("\\{\\{(\\w+)\\}\\}");
+
+	// cada parte e um byte[] de texto fixo ou o nome (String) de uma lacuna
+	private final Object[] head;
+	private final Object[] footer;
+
+	private PageLayout(Object[] head, Object[] footer) {
+		this.head = head;
+		this.footer = footer;
+	}
+
+	public static PageLayout parse(String template) {
+		List<Object> head = new ArrayList<>();
+		List<Object> footer = null;
+		List<Object> current = head;
+		Matcher slot = SLOT.matcher(template);
+		int start = 0;
+		while (slot.find()) {
+			current.add(template.substring(start, slot.start()).getBytes(StandardCharsets.UTF_8));
+			if (BODY.equals(slot.group(1))) {
+				if (footer != null) {
+					throw new IllegalArgumentException("O layout tem mais de um {{body}}");
+				}
+				footer = new ArrayList<>();
+				current = footer;
+			} else {
+				current.add(slot.group(1));
+			}
+			start = slot.end();
+		}
+		if (footer == null) {
+			throw new IllegalArgumentException("O layout nao tem {{body}}");
+		}
+		current.add(template.substring(start).getBytes(StandardCharsets.UTF_8));
+		return new PageLayout(head.toArray(), footer.toArray());
+	}
+
+	public void writeHead(OutputStream out, Map<String, String> slots) throws IOException {
+		write(head, out, slots);
+	}
+
+	public void writeFooter(OutputStream out, Map<String, String> slots) throws IOException {
+		write(footer, out, slots);
+	}
+
+	private void write(Object[] parts, OutputStream out, Map<String, String> slots) throws IOException {
+		for (Object part : parts) {
+			if (part instanceof byte[]) {
+				out.write((byte[]) part);
+			} else {
+				String value = slots.get(part);
+				if (value != null) {
+					out.write(HtmlUtils.htmlEscape(value).getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+	}
+}
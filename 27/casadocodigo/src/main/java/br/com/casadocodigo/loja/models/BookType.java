@@ -0,0 +1,5 @@
+package br.com.casadocodigo.loja.models;
+
+public enum BookType {
+	EBOOK, IMPRESSO, COMBO
+}
@@ -0,0 +1,16 @@
+package br.com.casadocodigo.loja.models;
+
+/**
+ * De onde o carrinho tira a tabela de precos atual e os produtos dos itens
+ * lidos do CartStore. Na aplicacao e o CatalogProductResolver, sobre o
+ * ProductDAO e o cache dele.
+ */
+public interface CartCatalog {
+
+	PriceTable priceTable();
+
+	/**
+	 * Produto com o id, ou null se nao existir mais.
+	 */
+	Product product(Integer id);
+}
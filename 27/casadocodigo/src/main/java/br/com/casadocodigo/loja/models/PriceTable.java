@@ -0,0 +1,116 @@
+package br.com.casadocodigo.loja.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Precos de todo o catalogo em centavos, por produto e tipo de livro, para
+ * que carrinho e cabecalho somem longs em vez de procurar o preco na lista
+ * do produto e multiplicar BigDecimals. BigDecimal so aparece na borda, em
+ * {@link #price}.
+ *
+ * A tabela e imutavel; quando um produto muda, outra e montada (ver
+ * ProductDAO.priceTable). A versao e um hash do conteudo, nunca negativo:
+ * a mesma tabela montada de novo, depois de um restart ou em outro no, tem a
+ * mesma versao, e precos diferentes dao outra. Um carrinho guarda a versao
+ * com que foi precificado e, se for a mesma, nao precisa precificar de
+ * novo.
+ */
+public class PriceTable {
+
+	public static final long NO_PRICE = -1;
+
+	private static final int BOOK_TYPES = BookType.values().length;
+
+	private final long version;
+	private final int[] productIds;
+	private final long[] cents;
+
+	private PriceTable(long version, int[] productIds, long[] cents) {
+		this.version = version;
+		this.productIds = productIds;
+		this.cents = cents;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int size() {
+		return productIds.length;
+	}
+
+	/**
+	 * Preco em centavos, ou {@link #NO_PRICE} se o produto nao tiver preco
+	 * para esse tipo de livro.
+	 */
+	public long cents(int productId, BookType bookType) {
+		int position = Arrays.binarySearch(productIds, productId);
+		return position < 0 ? NO_PRICE : cents[position * BOOK_TYPES + bookType.ordinal()];
+	}
+
+	/**
+	 * Preco, ou null se o produto nao tiver preco para esse tipo de livro.
+	 */
+	public BigDecimal price(int productId, BookType bookType) {
+		long value = cents(productId, bookType);
+		return value == NO_PRICE ? null : toPrice(value);
+	}
+
+	public static long toCents(BigDecimal price) {
+		return price.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	public static BigDecimal toPrice(long cents) {
+		return BigDecimal.valueOf(cents, 2);
+	}
+
+	/**
+	 * Monta a tabela a partir dos precos em ordem de id de produto, como vem
+	 * da consulta em ProductDAO.
+	 */
+	public static class Builder {
+
+		private int[] productIds = new int[1024];
+		private long[] cents = new long[1024 * BOOK_TYPES];
+		private int size;
+
+		public Builder add(int productId, BookType bookType, BigDecimal price) {
+			if (size == 0 || productIds[size - 1] != productId) {
+				if (size > 0 && productIds[size - 1] > productId) {
+					throw new IllegalArgumentException("Precos fora da ordem de produto: " + productId);
+				}
+				if (size == productIds.length) {
+					productIds = Arrays.copyOf(productIds, size * 2);
+					cents = Arrays.copyOf(cents, size * 2 * BOOK_TYPES);
+				}
+				productIds[size] = productId;
+				Arrays.fill(cents, size * BOOK_TYPES, (size + 1) * BOOK_TYPES, NO_PRICE);
+				size++;
+			}
+			cents[(size - 1) * BOOK_TYPES + bookType.ordinal()] = toCents(price);
+			return this;
+		}
+
+		public PriceTable build() {
+			int[] builtIds = Arrays.copyOf(productIds, size);
+			long[] builtCents = Arrays.copyOf(cents, size * BOOK_TYPES);
+			return new PriceTable(hash(builtIds, builtCents), builtIds, builtCents);
+		}
+
+		/**
+		 * FNV-1a de 64 bits sobre ids e precos.
+		 */
+		private static long hash(int[] productIds, long[] cents) {
+			long hash = 0xcbf29ce484222325L;
+			for (int productId : productIds) {
+				hash = (hash ^ productId) * 0x100000001b3L;
+			}
+			for (long value : cents) {
+				hash = (hash ^ value) * 0x100000001b3L;
+			}
+			return hash & Long.MAX_VALUE;
+		}
+	}
+}
@@ -1,13 +1,49 @@
 package br.com.casadocodigo.loja.models;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.validation.constraints.Min;
+
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.validator.constraints.NotBlank;
+
+@Entity
 public class Product {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Integer id;
+	@NotBlank
 	private String title;
+	@NotBlank
 	private String description;
+	@Min(1)
 	private int numberOfPages;
+	private String summaryPath;
+
+	// carregado junto com o produto, que fica no cache depois da transacao
+	@ElementCollection(fetch = FetchType.EAGER)
+	@BatchSize(size = 100)
+	private List<Price> prices = new ArrayList<Price>();
 
 	
 	
 	// getters e setters
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
 	public String getTitle() {
 		return title;
 	}
@@ -32,4 +68,33 @@ public class Product {
 		this.numberOfPages = numberOfPages;
 	}
 
-}
\ No newline at end of file
+	public String getSummaryPath() {
+		return summaryPath;
+	}
+
+	public void setSummaryPath(String summaryPath) {
+		this.summaryPath = summaryPath;
+	}
+
+	public List<Price> getPrices() {
+		return prices;
+	}
+
+	public void setPrices(List<Price> prices) {
+		this.prices = prices;
+	}
+
+	/**
+	 * Preco do produto para o tipo de livro, ou null se ele nao for vendido
+	 * nesse tipo.
+	 */
+	public BigDecimal priceFor(BookType bookType) {
+		for (Price price : prices) {
+			if (price.getBookType() == bookType) {
+				return price.getValue();
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,26 @@
+package br.com.casadocodigo.loja.models;
+
+import java.util.List;
+
+/**
+ * Pagina da listagem de produtos. {@code next} e o id a ser passado em
+ * {@code after} para buscar a proxima pagina, ou null na ultima.
+ */
+public class ProductPage {
+
+	private final List<Product> products;
+	private final Integer next;
+
+	public ProductPage(List<Product> products, Integer next) {
+		this.products = products;
+		this.next = next;
+	}
+
+	public List<Product> getProducts() {
+		return products;
+	}
+
+	public Integer getNext() {
+		return next;
+	}
+}
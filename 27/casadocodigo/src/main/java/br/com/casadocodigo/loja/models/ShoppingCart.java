@@ -0,0 +1,345 @@
+package br.com.casadocodigo.loja.models;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.stereotype.Component;
+
+import br.com.casadocodigo.loja.carts.CartScope;
+import br.com.casadocodigo.loja.carts.RebasableCart;
+
+/**
+ * Carrinho do usuario, guardado no CartStore (ver CartScope). A quantidade
+ * e o total sao mantidos a cada add/remove, entao o cabecalho das paginas le
+ * os dois sem percorrer os itens. As alteracoes sincronizam no proprio
+ * carrinho, que e unico por requisicao, para o caso de a requisicao usa-lo
+ * em mais de uma thread.
+ *
+ * Precos e total ficam em centavos, tirados da {@link PriceTable} do
+ * {@link CartCatalog} injetado; cada item guarda o preco unitario com que foi
+ * precificado e o carrinho, a versao da tabela usada. Enquanto a versao for a
+ * mesma os itens nao sao precificados de novo. Quando muda, sao, e se algum
+ * preco mudou {@link #isRepriced()} passa a ser true. Um item sem preco na
+ * tabela fica no carrinho como fora de venda, fora do total.
+ *
+ * Serializado, o carrinho grava a versao do formato, a versao da tabela de
+ * precos e, por item, id do produto, tipo do livro (o ordinal, em um byte),
+ * quantidade e preco em centavos.
+ *
+ * O carrinho lembra, por item, o que a requisicao fez desde a leitura (se o
+ * item foi removido e quantos foram adicionados depois), para refazer as
+ * alteracoes sobre outra versao em {@link #rebase}.
+ */
+@Component
+@Scope(value = CartScope.NAME, proxyMode = ScopedProxyMode.TARGET_CLASS)
+public class ShoppingCart implements RebasableCart {
+
+	private static final long serialVersionUID = 1L;
+	private static final byte SCHEMA_VERSION = 1;
+	/**
+	 * Versao de tabela de um carrinho ainda nao precificado; as versoes
+	 * nunca sao negativas.
+	 */
+	private static final long UNPRICED = Long.MIN_VALUE;
+
+	private final Map<ShoppingItem, Line> items = new LinkedHashMap<ShoppingItem, Line>();
+	private final Map<ShoppingItem, Change> changes = new LinkedHashMap<ShoppingItem, Change>();
+	private volatile int quantity;
+	private volatile long totalCents;
+	private volatile long priceVersion = UNPRICED;
+	private boolean repriced;
+	private CartCatalog catalog;
+
+	/**
+	 * Para o Externalizable; o catalogo precisa ser definido antes do uso.
+	 */
+	public ShoppingCart() {
+	}
+
+	@Autowired
+	public ShoppingCart(CartCatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	public void setCatalog(CartCatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	public synchronized void add(ShoppingItem item) {
+		change(item).added++;
+		addLine(item);
+	}
+
+	private void addLine(ShoppingItem item) {
+		PriceTable table = price();
+		Line line = items.get(item);
+		if (line == null) {
+			line = new Line(item.getPriceInCents(table));
+			items.put(item, line);
+		}
+		line.quantity++;
+		quantity++;
+		if (line.unitCents != PriceTable.NO_PRICE) {
+			totalCents += line.unitCents;
+		}
+	}
+
+	public synchronized int getQuantity(ShoppingItem item) {
+		Line line = items.get(item);
+		return line == null ? 0 : line.quantity;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public synchronized Collection<ShoppingItem> getList() {
+		return new ArrayList<ShoppingItem>(items.keySet());
+	}
+
+	/**
+	 * Produto do item, carregado do catalogo para itens lidos do CartStore;
+	 * null se o produto nao existir mais.
+	 */
+	public Product getProduct(ShoppingItem item) {
+		return item.getProduct(catalog());
+	}
+
+	/**
+	 * Preco unitario do item, ou null se ele nao estiver mais a venda.
+	 */
+	public synchronized BigDecimal getPrice(ShoppingItem item) {
+		long cents = getPriceInCents(item);
+		return cents == PriceTable.NO_PRICE ? null : PriceTable.toPrice(cents);
+	}
+
+	/**
+	 * Total do item, zero se ele nao estiver no carrinho ou null se nao
+	 * estiver mais a venda.
+	 */
+	public synchronized BigDecimal getTotal(ShoppingItem item) {
+		Line line = items.get(item);
+		if (line == null) {
+			return PriceTable.toPrice(0);
+		}
+		price();
+		return line.unitCents == PriceTable.NO_PRICE ? null : PriceTable.toPrice(line.total());
+	}
+
+	/**
+	 * Total dos itens a venda; os que sairam de venda nao entram (ver
+	 * {@link #hasUnavailableItems()}).
+	 */
+	public BigDecimal getTotal() {
+		if (quantity == 0) {
+			return PriceTable.toPrice(0);
+		}
+		if (catalog().priceTable().getVersion() != priceVersion) {
+			synchronized (this) {
+				price();
+			}
+		}
+		return PriceTable.toPrice(totalCents);
+	}
+
+	/**
+	 * Preco unitario em centavos, ou {@link PriceTable#NO_PRICE} se o item
+	 * nao estiver mais a venda.
+	 */
+	public synchronized long getPriceInCents(ShoppingItem item) {
+		Line line = items.get(item);
+		if (line == null) {
+			throw new IllegalArgumentException("Item fora do carrinho: " + item.getProductId());
+		}
+		price();
+		return line.unitCents;
+	}
+
+	public synchronized long getTotalInCents() {
+		price();
+		return totalCents;
+	}
+
+	/**
+	 * Se algum item mudou de preco (ou saiu de venda) ao ser precificado de
+	 * novo nesta requisicao. O flag nao e serializado: o carrinho e gravado
+	 * com os precos novos, que na requisicao seguinte ja sao os precos dele,
+	 * entao so a requisicao que viu a mudanca recusa o checkout.
+	 */
+	public synchronized boolean isRepriced() {
+		if (quantity > 0) {
+			price();
+		}
+		return repriced;
+	}
+
+	/**
+	 * Se algum item nao tem preco na tabela atual, porque o produto ou o
+	 * tipo de livro saiu de venda. Um carrinho assim nao pode ser fechado.
+	 */
+	public synchronized boolean hasUnavailableItems() {
+		if (quantity == 0) {
+			return false;
+		}
+		price();
+		for (Line line : items.values()) {
+			if (line.unitCents == PriceTable.NO_PRICE) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized void remove(ShoppingItem shoppingItem) {
+		Change change = change(shoppingItem);
+		change.removed = true;
+		change.added = 0;
+		removeLine(shoppingItem);
+	}
+
+	private void removeLine(ShoppingItem shoppingItem) {
+		if (!items.containsKey(shoppingItem)) {
+			return;
+		}
+		price();
+		Line line = items.remove(shoppingItem);
+		quantity -= line.quantity;
+		totalCents -= line.total();
+	}
+
+	public boolean isEmpty() {
+		return quantity == 0;
+	}
+
+	private Change change(ShoppingItem item) {
+		Change change = changes.get(item);
+		if (change == null) {
+			change = new Change();
+			changes.put(item, change);
+		}
+		return change;
+	}
+
+	/**
+	 * Precifica os itens de novo se a tabela atual nao for a usada da ultima
+	 * vez. Chamado com o lock do carrinho.
+	 */
+	private PriceTable price() {
+		PriceTable table = catalog().priceTable();
+		if (table.getVersion() != priceVersion) {
+			long total = 0;
+			for (Map.Entry<ShoppingItem, Line> entry : items.entrySet()) {
+				Line line = entry.getValue();
+				long cents = entry.getKey().getPriceInCents(table);
+				if (line.unitCents != cents) {
+					repriced = true;
+				}
+				line.unitCents = cents;
+				total += line.total();
+			}
+			totalCents = total;
+			priceVersion = table.getVersion();
+		}
+		return table;
+	}
+
+	private CartCatalog catalog() {
+		if (catalog == null) {
+			throw new IllegalStateException("Carrinho sem catalogo de precos");
+		}
+		return catalog;
+	}
+
+	@Override
+	public synchronized void writeExternal(ObjectOutput out) throws IOException {
+		out.writeByte(SCHEMA_VERSION);
+		out.writeLong(priceVersion);
+		out.writeInt(items.size());
+		for (Map.Entry<ShoppingItem, Line> entry : items.entrySet()) {
+			entry.getKey().writeExternal(out);
+			out.writeInt(entry.getValue().quantity);
+			out.writeLong(entry.getValue().unitCents);
+		}
+	}
+
+	@Override
+	public synchronized void readExternal(ObjectInput in) throws IOException {
+		byte version = in.readByte();
+		if (version != SCHEMA_VERSION) {
+			throw new InvalidClassException(ShoppingCart.class.getName(), "Versao de carrinho desconhecida: " + version);
+		}
+		items.clear();
+		long storedPriceVersion = in.readLong();
+		int count = 0;
+		long total = 0;
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			ShoppingItem item = new ShoppingItem();
+			item.readExternal(in);
+			int lineQuantity = in.readInt();
+			Line line = new Line(in.readLong());
+			line.quantity = lineQuantity;
+			items.put(item, line);
+			count += line.quantity;
+			total += line.total();
+		}
+		quantity = count;
+		totalCents = total;
+		priceVersion = storedPriceVersion;
+		repriced = false;
+	}
+
+	@Override
+	public synchronized void rebase(ObjectInput newer) throws IOException {
+		readExternal(newer);
+		for (Map.Entry<ShoppingItem, Change> entry : changes.entrySet()) {
+			if (entry.getValue().removed) {
+				removeLine(entry.getKey());
+			}
+			for (int i = 0; i < entry.getValue().added; i++) {
+				addLine(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * O que a requisicao fez com um item: se o removeu e quantos adicionou
+	 * depois da ultima remocao.
+	 */
+	private static class Change {
+
+		private boolean removed;
+		private int added;
+	}
+
+	/**
+	 * Quantidade de um item e o preco unitario, em centavos, com que ele foi
+	 * precificado pela ultima vez.
+	 */
+	private static class Line {
+
+		private long unitCents;
+		private int quantity;
+
+		Line(long unitCents) {
+			this.unitCents = unitCents;
+		}
+
+		/**
+		 * Total da linha; zero se o item nao tiver preco.
+		 */
+		long total() {
+			return unitCents == PriceTable.NO_PRICE ? 0 : unitCents * quantity;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package br.com.casadocodigo.loja.models;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+
+/**
+ * Item do carrinho: id do produto e tipo do livro. Preco e produto vem do
+ * {@link CartCatalog} do carrinho (ver ShoppingCart.getPrice e
+ * ShoppingCart.getProduct); o item so guarda o produto com que foi criado.
+ */
+public class ShoppingItem implements Externalizable {
+
+	private static final long serialVersionUID = 1L;
+	private static final BookType[] BOOK_TYPES = BookType.values();
+
+	private transient Product product;
+	private BookType bookType;
+	private Integer productId;
+
+	public ShoppingItem() {
+	}
+	
+	public ShoppingItem(Product product, BookType bookType) {
+		this.product = product;
+		this.bookType = bookType;
+		this.productId = product.getId();
+	}
+
+	Product getProduct(CartCatalog catalog) {
+		if (product == null) {
+			product = catalog.product(productId);
+		}
+		return product;
+	}
+
+	public Integer getProductId() {
+		return productId;
+	}
+	
+	public BookType getBookType() {
+		return bookType;
+	}
+
+	/**
+	 * Preco em centavos na tabela, ou {@link PriceTable#NO_PRICE} se o produto
+	 * nao estiver mais a venda nesse tipo.
+	 */
+	long getPriceInCents(PriceTable table) {
+		return table.cents(productId, bookType);
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(productId);
+		out.writeByte(bookType.ordinal());
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		productId = in.readInt();
+		int ordinal = in.readUnsignedByte();
+		if (ordinal >= BOOK_TYPES.length) {
+			throw new StreamCorruptedException("Tipo de livro desconhecido: " + ordinal);
+		}
+		bookType = BOOK_TYPES[ordinal];
+		product = null;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result
+				+ ((bookType == null) ? 0 : bookType.hashCode());
+		result = prime * result
+				+ ((productId == null) ? 0 : productId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ShoppingItem other = (ShoppingItem) obj;
+		if (bookType != other.bookType)
+			return false;
+		if (productId == null) {
+			if (other.productId != null)
+				return false;
+		} else if (!productId.equals(other.productId))
+			return false;
+		return true;
+	}
+
+}
@@ -0,0 +1,171 @@
+package br.com.casadocodigo.loja.resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.resource.EncodedResource;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+
+/**
+ * Serve /resources. Um endereco com o hash do conteudo no nome (gerado pelo
+ * VersionResourceResolver) nunca muda de conteudo, entao vai com cache de um
+ * ano e immutable, e o navegador nem revalida. Os demais vao com no-cache e
+ * sao revalidados pelo Last-Modified. Os dois cabecalhos vao antes da
+ * conferencia do If-Modified-Since, entao tambem saem no 304.
+ *
+ * Se o cliente aceita gzip e existe um .gz ao lado do arquivo (gerado no
+ * build), o .gz e entregue com Content-Encoding. Isso fica aqui e nao num
+ * ResourceResolver porque o CachingResourceResolver guarda o recurso so
+ * pelo caminho, sem considerar o Accept-Encoding.
+ *
+ * Arquivos grandes que existem no disco (war expandido) sao entregues pelo
+ * sendfile do Tomcat, sem passar pela JVM; o tamanho minimo e o mesmo que o
+ * DefaultServlet usa.
+ */
+public class StaticResourceHandler extends ResourceHttpRequestHandler {
+
+	private static final Pattern FINGERPRINTED = Pattern.compile(".*-[0-9a-f]{32}\\.[^/.]+$");
+	private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+	private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+	private static final String RESOURCE_ATTRIBUTE = StaticResourceHandler.class.getName() + ".resource";
+
+	/**
+	 * Procura o recurso antes do super para por Cache-Control e Vary antes do
+	 * checkNotModified, que responde 304 sem chamar setHeaders. So com o
+	 * recurso achado, para um 404 de hash antigo nao sair immutable.
+	 */
+	@Override
+	public void handleRequest(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		Resource resource = getResource(request);
+		if (resource != null) {
+			request.setAttribute(RESOURCE_ATTRIBUTE, resource);
+			String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+			response.setHeader("Cache-Control", path != null && FINGERPRINTED.matcher(path).matches()
+					? IMMUTABLE : "no-cache");
+			// o mesmo endereco responde gzip ou nao conforme o Accept-Encoding
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+		super.handleRequest(request, response);
+	}
+
+	@Override
+	protected Resource getResource(HttpServletRequest request) throws IOException {
+		Resource found = (Resource) request.getAttribute(RESOURCE_ATTRIBUTE);
+		if (found != null) {
+			return found;
+		}
+		Resource resource = super.getResource(request);
+		if (resource == null || !acceptsGzip(request)) {
+			return resource;
+		}
+		Resource gzipped = resource.createRelative(resource.getFilename() + ".gz");
+		return gzipped.exists() ? new GzippedResource(resource, gzipped) : resource;
+	}
+
+	private boolean acceptsGzip(HttpServletRequest request) {
+		String accepted = request.getHeader("Accept-Encoding");
+		return accepted != null && accepted.toLowerCase().contains("gzip");
+	}
+
+	@Override
+	protected void writeContent(HttpServletResponse response, Resource resource) throws IOException {
+		HttpServletRequest request = currentRequest();
+		File file = file(resource);
+		if (file == null || file.length() < SENDFILE_MIN_SIZE
+				|| !Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+			super.writeContent(response, resource);
+			return;
+		}
+		request.setAttribute("org.apache.tomcat.sendfile.filename", file.getAbsolutePath());
+		request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+		request.setAttribute("org.apache.tomcat.sendfile.end", file.length());
+	}
+
+	private HttpServletRequest currentRequest() {
+		return ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+	}
+
+	private File file(Resource resource) {
+		try {
+			return resource.getFile();
+		} catch (IOException e) {
+			// dentro de um war fechado, nao ha arquivo para o sendfile
+			return null;
+		}
+	}
+
+	private static class GzippedResource extends AbstractResource implements EncodedResource {
+
+		private final Resource original;
+		private final Resource gzipped;
+
+		GzippedResource(Resource original, Resource gzipped) {
+			this.original = original;
+			this.gzipped = gzipped;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return gzipped.getInputStream();
+		}
+
+		@Override
+		public boolean exists() {
+			return gzipped.exists();
+		}
+
+		@Override
+		public URL getURL() throws IOException {
+			return gzipped.getURL();
+		}
+
+		@Override
+		public File getFile() throws IOException {
+			return gzipped.getFile();
+		}
+
+		@Override
+		public long contentLength() throws IOException {
+			return gzipped.contentLength();
+		}
+
+		@Override
+		public long lastModified() throws IOException {
+			return gzipped.lastModified();
+		}
+
+		@Override
+		public Resource createRelative(String relativePath) throws IOException {
+			return original.createRelative(relativePath);
+		}
+
+		// o nome original, para o Content-Type sair do .css e nao do .gz
+		@Override
+		public String getFilename() {
+			return original.getFilename();
+		}
+
+		@Override
+		public String getDescription() {
+			return gzipped.getDescription();
+		}
+
+		@Override
+		public String getContentEncoding() {
+			return "gzip";
+		}
+	}
+}
@@ -0,0 +1,459 @@
+package br.com.casadocodigo.loja.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import br.com.casadocodigo.loja.conf.StartupMode;
+import br.com.casadocodigo.loja.daos.ProductDAO;
+import br.com.casadocodigo.loja.daos.ProductHandler;
+import br.com.casadocodigo.loja.models.Product;
+
+/**
+ * Indice invertido de titulo e descricao dos produtos, em memoria, para a
+ * busca e o autocomplete sem LIKE no banco. Cada termo aponta para os ids
+ * dos produtos que o contem, em um int[] ordenado; os termos ficam em um
+ * mapa ordenado para que a ultima palavra da consulta seja buscada como
+ * prefixo.
+ *
+ * O indice e montado ao subir a aplicacao e atualizado pelos DAOs depois
+ * do commit de cada produto gravado. Se a montagem falhar (ou, no modo lazy,
+ * enquanto ela roda em segundo plano) a busca volta vazia, e a primeira
+ * consulta depois de {@value #RETRY_INTERVAL_MILLIS} ms da ultima tentativa
+ * dispara outra montagem em segundo plano. Consultas nao tomam lock: as
+ * atualizacoes trocam o array de cada termo por uma copia nova.
+ */
+@Component
+public class ProductSearchIndex implements ApplicationListener<ContextRefreshedEvent> {
+
+	public static final int MIN_PREFIX_LENGTH = 2;
+
+	private static final long RETRY_INTERVAL_MILLIS = 30000;
+
+	private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+	private final TextNormalizer normalizer = new TextNormalizer();
+	private volatile Postings postings = new Postings();
+	private volatile boolean built;
+	private volatile ApplicationContext context;
+	private final AtomicBoolean building = new AtomicBoolean();
+	private volatile long lastAttempt;
+
+	/**
+	 * Origem dos produtos para montar o indice inteiro, normalmente
+	 * {@link ProductDAO#scrollAll}.
+	 */
+	public interface Catalog {
+		void scrollAll(ProductHandler handler) throws IOException;
+	}
+
+	@Override
+	public synchronized void onApplicationEvent(ContextRefreshedEvent event) {
+		if (built) {
+			return;
+		}
+		context = event.getApplicationContext();
+		if (StartupMode.isLazy()) {
+			// no modo lazy a subida nao espera o Hibernate nem o catalogo;
+			// ate o indice ficar pronto a busca volta vazia
+			buildInBackground();
+			return;
+		}
+		build();
+	}
+
+	/**
+	 * Monta o indice em outra thread, se ainda nao houver uma montando.
+	 */
+	private void buildInBackground() {
+		if (context == null || !building.compareAndSet(false, true)) {
+			return;
+		}
+		Thread builder = new Thread(() -> {
+			try {
+				build();
+			} finally {
+				building.set(false);
+			}
+		}, "search-index-builder");
+		builder.setDaemon(true);
+		builder.start();
+	}
+
+	private void build() {
+		lastAttempt = System.currentTimeMillis();
+		try {
+			ProductDAO productDAO = context.getBean(ProductDAO.class);
+			long start = System.currentTimeMillis();
+			rebuild(productDAO::scrollAll);
+			logger.info("Indice de busca montado com {} produtos em {} ms", size(), System.currentTimeMillis() - start);
+		} catch (IOException | RuntimeException e) {
+			// qualquer falha (banco fora do ar ao criar o entityManagerFactory,
+			// JPA, mapeamento) deixa o indice vazio e sem built, para ser
+			// montado de novo na proxima consulta, em vez de derrubar a subida
+			logger.warn("Nao foi possivel montar o indice de busca", e);
+		}
+	}
+
+	/**
+	 * Monta o indice do zero a partir do catalogo inteiro e so entao troca o
+	 * indice atual, entao as consultas nunca veem um indice pela metade.
+	 * Atualizacoes feitas depois de um commit esperam a montagem terminar
+	 * e entram no indice novo; o catalogo precisa vir do primario, para
+	 * incluir tudo que ja foi indexado antes.
+	 */
+	public synchronized void rebuild(Catalog catalog) throws IOException {
+		Map<String, IntList> allTerms = new HashMap<>();
+		Map<String, IntList> titleTerms = new HashMap<>();
+		Map<Integer, Document> documents = new HashMap<>();
+		catalog.scrollAll(product -> {
+			Document document = document(product);
+			documents.put(document.id, document);
+			for (String term : document.allTerms) {
+				allTerms.computeIfAbsent(term, key -> new IntList()).add(document.id);
+			}
+			for (String term : document.titleTerms) {
+				titleTerms.computeIfAbsent(term, key -> new IntList()).add(document.id);
+			}
+		});
+
+		Postings rebuilt = new Postings();
+		allTerms.forEach((term, ids) -> rebuilt.allTerms.put(term, ids.toSortedArray()));
+		titleTerms.forEach((term, ids) -> rebuilt.titleTerms.put(term, ids.toSortedArray()));
+		rebuilt.documents.putAll(documents);
+		postings = rebuilt;
+		built = true;
+	}
+
+	/**
+	 * Indexa os produtos quando a transacao atual fizer commit, ou na hora
+	 * se nao houver transacao. Os termos sao extraidos agora, entao
+	 * alteracoes posteriores nos objetos nao afetam o indice.
+	 */
+	public void indexAfterCommit(Collection<Product> products) {
+		List<Document> documents = new ArrayList<>(products.size());
+		for (Product product : products) {
+			documents.add(document(product));
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					index(documents);
+				}
+			});
+		} else {
+			index(documents);
+		}
+	}
+
+	public void index(Product product) {
+		index(Collections.singletonList(document(product)));
+	}
+
+	private synchronized void index(List<Document> documents) {
+		Postings current = postings;
+		for (Document document : documents) {
+			Document previous = current.documents.get(document.id);
+			if (previous != null) {
+				for (String term : previous.allTerms) {
+					current.allTerms.computeIfPresent(term, (key, ids) -> without(ids, previous.id));
+				}
+				for (String term : previous.titleTerms) {
+					current.titleTerms.computeIfPresent(term, (key, ids) -> without(ids, previous.id));
+				}
+			}
+			for (String term : document.allTerms) {
+				current.allTerms.merge(term, new int[] { document.id }, (ids, ignored) -> with(ids, document.id));
+			}
+			for (String term : document.titleTerms) {
+				current.titleTerms.merge(term, new int[] { document.id }, (ids, ignored) -> with(ids, document.id));
+			}
+			current.documents.put(document.id, document);
+		}
+	}
+
+	/**
+	 * Produtos que tem todas as palavras da consulta, no titulo ou na
+	 * descricao. A ultima palavra vale como prefixo, para o autocomplete.
+	 * Produtos que casam so pelo titulo vem primeiro; dentro de cada grupo,
+	 * em ordem de id.
+	 */
+	public List<SearchHit> search(String query, int limit) {
+		if (!built && System.currentTimeMillis() - lastAttempt >= RETRY_INTERVAL_MILLIS) {
+			buildInBackground();
+		}
+		List<String> tokens = normalizer.tokens(query);
+		if (tokens.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+		List<String> terms = new ArrayList<>();
+		for (String token : tokens.subList(0, tokens.size() - 1)) {
+			if (!normalizer.isStopWord(token)) {
+				terms.add(token);
+			}
+		}
+		String last = tokens.get(tokens.size() - 1);
+		String prefix = null;
+		if (last.length() >= MIN_PREFIX_LENGTH) {
+			prefix = last;
+		} else if (!normalizer.isStopWord(last)) {
+			terms.add(last);
+		}
+		if (terms.isEmpty() && prefix == null) {
+			return Collections.emptyList();
+		}
+
+		Postings current = postings;
+		List<Integer> ids = new ArrayList<>(Math.min(limit, 16));
+		intersect(cursors(current.titleTerms, terms, prefix), limit, ids);
+		int titleMatches = ids.size();
+		if (ids.size() < limit) {
+			List<Integer> titleIds = new ArrayList<>(ids);
+			intersect(cursors(current.allTerms, terms, prefix), limit + titleMatches, ids);
+			ids.subList(titleMatches, ids.size()).removeAll(titleIds);
+		}
+
+		List<SearchHit> hits = new ArrayList<>(Math.min(ids.size(), limit));
+		for (Integer id : ids) {
+			Document document = current.documents.get(id);
+			if (document != null && hits.size() < limit) {
+				hits.add(new SearchHit(document.id, document.title));
+			}
+		}
+		return hits;
+	}
+
+	public int size() {
+		return postings.documents.size();
+	}
+
+	public int terms() {
+		return postings.allTerms.size();
+	}
+
+	/**
+	 * Um cursor por termo, do menor para o maior, ou null se algum termo nao
+	 * existir. Os termos que comecam com o prefixo viram um cursor so.
+	 */
+	private List<Cursor> cursors(NavigableMap<String, int[]> index, List<String> terms, String prefix) {
+		List<Cursor> cursors = new ArrayList<>(terms.size() + 1);
+		for (String term : terms) {
+			int[] ids = index.get(term);
+			if (ids == null) {
+				return null;
+			}
+			cursors.add(new ArrayCursor(ids));
+		}
+		if (prefix != null) {
+			Collection<int[]> lists = index.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values();
+			Iterator<int[]> iterator = lists.iterator();
+			if (!iterator.hasNext()) {
+				return null;
+			}
+			int[] first = iterator.next();
+			if (!iterator.hasNext()) {
+				cursors.add(new ArrayCursor(first));
+			} else {
+				BitSet union = new BitSet();
+				for (int[] ids : lists) {
+					for (int id : ids) {
+						union.set(id);
+					}
+				}
+				cursors.add(new BitSetCursor(union));
+			}
+		}
+		cursors.sort((a, b) -> Integer.compare(a.size(), b.size()));
+		return cursors;
+	}
+
+	/**
+	 * Ids presentes em todos os cursores, em ordem, ate juntar limit em ids.
+	 * O menor cursor conduz e os outros saltam direto para o id dele, entao
+	 * o custo depende do termo mais raro e de quantos resultados se quer,
+	 * nao do tamanho do catalogo.
+	 */
+	private void intersect(List<Cursor> cursors, int limit, List<Integer> ids) {
+		if (cursors == null) {
+			return;
+		}
+		Cursor lead = cursors.get(0);
+		int candidate = lead.advance(0);
+		while (candidate != Cursor.END && ids.size() < limit) {
+			int next = candidate;
+			for (int i = 1; i < cursors.size() && next == candidate; i++) {
+				next = cursors.get(i).advance(candidate);
+			}
+			if (next == candidate) {
+				ids.add(candidate);
+				next = candidate + 1;
+			}
+			candidate = next == Cursor.END ? Cursor.END : lead.advance(next);
+		}
+	}
+
+	private Document document(Product product) {
+		Set<String> titleTerms = new LinkedHashSet<>(normalizer.terms(product.getTitle()));
+		Set<String> allTerms = new LinkedHashSet<>(titleTerms);
+		allTerms.addAll(normalizer.terms(product.getDescription()));
+		return new Document(product.getId(), product.getTitle(), titleTerms, allTerms);
+	}
+
+	private static int[] with(int[] ids, int id) {
+		int position = Arrays.binarySearch(ids, id);
+		if (position >= 0) {
+			return ids;
+		}
+		position = -position - 1;
+		int[] copy = new int[ids.length + 1];
+		System.arraycopy(ids, 0, copy, 0, position);
+		copy[position] = id;
+		System.arraycopy(ids, position, copy, position + 1, ids.length - position);
+		return copy;
+	}
+
+	private static int[] without(int[] ids, int id) {
+		int position = Arrays.binarySearch(ids, id);
+		if (position < 0) {
+			return ids;
+		}
+		if (ids.length == 1) {
+			return null;
+		}
+		int[] copy = new int[ids.length - 1];
+		System.arraycopy(ids, 0, copy, 0, position);
+		System.arraycopy(ids, position + 1, copy, position, ids.length - position - 1);
+		return copy;
+	}
+
+	private abstract static class Cursor {
+
+		static final int END = Integer.MAX_VALUE;
+
+		/**
+		 * Primeiro id maior ou igual a target, ou END. Nunca volta para tras.
+		 */
+		abstract int advance(int target);
+
+		abstract int size();
+	}
+
+	private static class ArrayCursor extends Cursor {
+
+		private final int[] ids;
+		private int position;
+
+		ArrayCursor(int[] ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		int advance(int target) {
+			if (position >= ids.length || ids[position] >= target) {
+				return position < ids.length ? ids[position] : END;
+			}
+			int step = 1;
+			int low = position;
+			int high = position + 1;
+			while (high < ids.length && ids[high] < target) {
+				low = high;
+				step <<= 1;
+				high = position + step;
+			}
+			int found = Arrays.binarySearch(ids, low + 1, Math.min(high + 1, ids.length), target);
+			position = found >= 0 ? found : -found - 1;
+			return position < ids.length ? ids[position] : END;
+		}
+
+		@Override
+		int size() {
+			return ids.length;
+		}
+	}
+
+	private static class BitSetCursor extends Cursor {
+
+		private final BitSet ids;
+		private final int size;
+
+		BitSetCursor(BitSet ids) {
+			this.ids = ids;
+			this.size = ids.cardinality();
+		}
+
+		@Override
+		int advance(int target) {
+			int id = ids.nextSetBit(target);
+			return id < 0 ? END : id;
+		}
+
+		@Override
+		int size() {
+			return size;
+		}
+	}
+
+	private static class Postings {
+
+		private final ConcurrentSkipListMap<String, int[]> allTerms = new ConcurrentSkipListMap<>();
+		private final ConcurrentSkipListMap<String, int[]> titleTerms = new ConcurrentSkipListMap<>();
+		private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+	}
+
+	private static class Document {
+
+		private final int id;
+		private final String title;
+		private final Set<String> titleTerms;
+		private final Set<String> allTerms;
+
+		Document(int id, String title, Set<String> titleTerms, Set<String> allTerms) {
+			this.id = id;
+			this.title = title;
+			this.titleTerms = titleTerms;
+			this.allTerms = allTerms;
+		}
+	}
+
+	private static class IntList {
+
+		private int[] values = new int[4];
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int[] toSortedArray() {
+			int[] array = Arrays.copyOf(values, size);
+			Arrays.sort(array);
+			return array;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package br.com.casadocodigo.loja.search;
+
+/**
+ * Produto encontrado na busca. Traz so o que o autocomplete mostra, sem ir
+ * ao banco.
+ */
+public class SearchHit {
+
+	private final Integer id;
+	private final String title;
+
+	public SearchHit(Integer id, String title) {
+		this.id = id;
+		this.title = title;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+}
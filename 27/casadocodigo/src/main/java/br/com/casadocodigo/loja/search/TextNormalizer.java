@@ -0,0 +1,92 @@
+package br.com.casadocodigo.loja.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Quebra textos em termos para o indice de busca: minusculas, sem acentos
+ * ("Programação" vira "programacao") e sem as palavras mais comuns do
+ * portugues, que aparecem em quase todo titulo e nao ajudam a filtrar.
+ */
+public class TextNormalizer {
+
+	private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+			"a", "o", "as", "os", "e", "de", "da", "do", "das", "dos", "em", "na", "no", "nas", "nos",
+			"um", "uma", "uns", "umas", "com", "para", "por", "pra", "ao", "aos", "que", "se"));
+
+	private static final char LATIN1_START = '\u00e0';
+	private static final String LATIN1_FOLDED = "aaaaaa\u00e6ceeeeiiii\u00f0nooooo\u00f7ouuuuy\u00fey";
+
+	/**
+	 * Termos do texto, na ordem em que aparecem, sem palavras comuns.
+	 */
+	public List<String> terms(String text) {
+		List<String> terms = new ArrayList<>();
+		for (String token : tokens(text)) {
+			if (!isStopWord(token)) {
+				terms.add(token);
+			}
+		}
+		return terms;
+	}
+
+	public boolean isStopWord(String token) {
+		return STOP_WORDS.contains(token);
+	}
+
+	/**
+	 * Todas as palavras do texto ja normalizadas, inclusive as comuns. Usado
+	 * na consulta, onde a ultima palavra pode ser o comeco de outra.
+	 */
+	public List<String> tokens(String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text == null || text.isEmpty()) {
+			return tokens;
+		}
+		String folded = fold(text);
+		int start = -1;
+		for (int i = 0; i <= folded.length(); i++) {
+			boolean letterOrDigit = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+			if (letterOrDigit && start < 0) {
+				start = i;
+			} else if (!letterOrDigit && start >= 0) {
+				tokens.add(folded.substring(start, i));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Remove acentos e cedilha e passa para minusculas. As letras do
+	 * Latin-1, que cobrem o portugues, saem de uma tabela; as demais passam
+	 * pelo Normalizer.
+	 */
+	public String fold(String text) {
+		StringBuilder folded = null;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			char lower = c < 128 ? (c >= 'A' && c <= 'Z' ? (char) (c + 32) : c) : foldChar(c);
+			if (lower != c && folded == null) {
+				folded = new StringBuilder(text.length()).append(text, 0, i);
+			}
+			if (folded != null) {
+				folded.append(lower);
+			}
+		}
+		return folded == null ? text : folded.toString();
+	}
+
+	private char foldChar(char c) {
+		char lower = Character.toLowerCase(c);
+		if (lower >= LATIN1_START && lower < LATIN1_START + LATIN1_FOLDED.length()) {
+			return LATIN1_FOLDED.charAt(lower - LATIN1_START);
+		}
+		String decomposed = Normalizer.normalize(String.valueOf(lower), Normalizer.Form.NFD);
+		return decomposed.isEmpty() ? lower : decomposed.charAt(0);
+	}
+}
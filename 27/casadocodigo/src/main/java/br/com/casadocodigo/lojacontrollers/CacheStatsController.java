@@ -0,0 +1,24 @@
+package br.com.casadocodigo.lojacontrollers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import br.com.casadocodigo.loja.cache.InstrumentedGuavaCacheManager;
+
+@Controller
+public class CacheStatsController {
+
+	@Autowired
+	private InstrumentedGuavaCacheManager cacheManager;
+
+	@RequestMapping(value = "/cache/stats", method = RequestMethod.GET)
+	@ResponseBody
+	public Map<String, Map<String, Object>> stats() {
+		return cacheManager.stats();
+	}
+}
@@ -0,0 +1,98 @@
+package br.com.casadocodigo.lojacontrollers;
+
+import java.net.URI;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import br.com.casadocodigo.loja.carts.CartIdInterceptor;
+import br.com.casadocodigo.loja.checkout.Checkout;
+import br.com.casadocodigo.loja.checkout.CheckoutService;
+import br.com.casadocodigo.loja.models.ShoppingCart;
+
+@Controller
+public class CheckoutController {
+
+	private static final long RESPONSE_TIMEOUT_MILLIS = 10000;
+	private static final String RETRY_AFTER_SECONDS = "5";
+	private static final int MAX_KEY_LENGTH = 100;
+
+	@Autowired
+	private ShoppingCart shoppingCart;
+
+	@Autowired
+	private CheckoutService checkoutService;
+
+	/**
+	 * Entrega o carrinho ao CheckoutService e devolve a thread ao Tomcat
+	 * (o DeferredResult faz o startAsync). A resposta sai quando o pagamento
+	 * terminar ou, passado RESPONSE_TIMEOUT_MILLIS, como 202 com o endereco
+	 * para acompanhar o pedido. Com a fila cheia a resposta e 503 com
+	 * Retry-After.
+	 *
+	 * A chave de idempotencia vem no cabecalho Idempotency-Key ou, em
+	 * formularios, no parametro idempotencyKey.
+	 */
+	@RequestMapping(value = "/shopping/checkout", method = RequestMethod.POST)
+	public DeferredResult<ResponseEntity<Checkout>> checkout(HttpServletRequest request,
+			@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+		DeferredResult<ResponseEntity<Checkout>> result = new DeferredResult<>(RESPONSE_TIMEOUT_MILLIS);
+		String key = idempotencyKey != null ? idempotencyKey : request.getParameter("idempotencyKey");
+		if (key == null || key.isEmpty() || key.length() > MAX_KEY_LENGTH || shoppingCart.isEmpty()) {
+			result.setResult(new ResponseEntity<Checkout>(HttpStatus.BAD_REQUEST));
+			return result;
+		}
+		if (shoppingCart.isRepriced() || shoppingCart.hasUnavailableItems()) {
+			result.setResult(new ResponseEntity<Checkout>(HttpStatus.CONFLICT));
+			return result;
+		}
+
+		Checkout checkout;
+		try {
+			checkout = checkoutService.submit(key, CartIdInterceptor.cartId(request), shoppingCart);
+		} catch (TaskRejectedException e) {
+			result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header("Retry-After", RETRY_AFTER_SECONDS)
+					.body(null));
+			return result;
+		}
+
+		URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{key}").buildAndExpand(key).toUri();
+		result.onTimeout(() -> result.setResult(response(checkout, location)));
+		checkout.whenDone(done -> result.setResult(response(done, location)));
+		return result;
+	}
+
+	@RequestMapping(value = "/shopping/checkout/{key}", method = RequestMethod.GET)
+	public ResponseEntity<Checkout> status(@PathVariable("key") String key) {
+		Checkout checkout = checkoutService.find(key);
+		if (checkout == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(checkout, HttpStatus.OK);
+	}
+
+	private ResponseEntity<Checkout> response(Checkout checkout, URI location) {
+		switch (checkout.getStatus()) {
+		case PAID:
+			return ResponseEntity.created(location).body(checkout);
+		case DECLINED:
+			return ResponseEntity.status(HttpStatus.PAYMENT_REQUIRED).body(checkout);
+		case FAILED:
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(checkout);
+		default:
+			return ResponseEntity.accepted().location(location).body(checkout);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package br.com.casadocodigo.lojacontrollers;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import br.com.casadocodigo.loja.importer.ProductImportJob;
+import br.com.casadocodigo.loja.importer.ProductImportService;
+
+@Controller
+public class ProductImportController {
+
+	private static final int MAX_CHUNK_SIZE = 5000;
+
+	@Autowired
+	private ProductImportService importService;
+
+	@RequestMapping(value = "/products/import", method = RequestMethod.POST)
+	public ResponseEntity<ProductImportJob> submit(@RequestParam("file") MultipartFile file,
+			@RequestParam(value = "chunkSize", defaultValue = "500") int chunkSize) throws IOException {
+		// o servico le o arquivo do disco aos poucos e o apaga no fim
+		File content = File.createTempFile("product-import-", ".upload");
+		file.transferTo(content);
+		ProductImportJob job;
+		try {
+			job = importService.submit(file.getOriginalFilename(), content,
+					Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE)));
+		} catch (TaskRejectedException e) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		return ResponseEntity.accepted()
+				.location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(job.getId()).toUri())
+				.body(job);
+	}
+
+	@RequestMapping(value = "/products/import/{id}", method = RequestMethod.GET)
+	public ResponseEntity<ProductImportJob> status(@PathVariable("id") String id) {
+		ProductImportJob job = importService.find(id);
+		if (job == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(job, HttpStatus.OK);
+	}
+}
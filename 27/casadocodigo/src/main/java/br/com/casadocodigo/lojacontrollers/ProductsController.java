@@ -1,13 +1,113 @@
 package br.com.casadocodigo.lojacontrollers;
 
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.ModelAndView;
+
+import br.com.casadocodigo.loja.daos.ProductDAO;
+import br.com.casadocodigo.loja.layout.LayoutView;
+import br.com.casadocodigo.loja.models.Product;
+import br.com.casadocodigo.loja.models.ProductPage;
+import br.com.casadocodigo.loja.search.ProductSearchIndex;
+import br.com.casadocodigo.loja.search.SearchHit;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 @Controller
 public class ProductsController {
+
+	private static final int MAX_PAGE_SIZE = 100;
+	private static final int EXPORT_PAGE_SIZE = 100;
+	private static final int MAX_SEARCH_RESULTS = 50;
+
+	private final ObjectMapper mapper = new ObjectMapper()
+			.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+	@Autowired
+	private ProductDAO productDAO;
+
+	@Autowired
+	private ProductSearchIndex searchIndex;
+
 	@RequestMapping("/products/form")
 	public String form() {
 		return "products/form";
 
 	}
+
+	@RequestMapping(value = "/products", method = RequestMethod.POST)
+	public String save(Product product) {
+		productDAO.save(product);
+		return "redirect:products";
+	}
+
+	@RequestMapping(value = "/products", method = RequestMethod.GET)
+	public ModelAndView list() {
+		ModelAndView modelAndView = new ModelAndView("products/list");
+		modelAndView.addObject("products", productDAO.list());
+		return modelAndView;
+	}
+
+	@RequestMapping(value = "/products/show/{id}", method = RequestMethod.GET)
+	public ModelAndView show(@PathVariable("id") Integer id, HttpServletResponse response) throws IOException {
+		Product product = productDAO.find(id);
+		if (product == null) {
+			// 404 nao entra no PageCacheFilter
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return null;
+		}
+		ModelAndView modelAndView = new ModelAndView("products/show");
+		modelAndView.addObject("product", product);
+		modelAndView.addObject(LayoutView.TITLE, product.getTitle());
+		return modelAndView;
+	}
+
+	@RequestMapping(value = "/products/page", method = RequestMethod.GET, produces = "application/json")
+	@ResponseBody
+	public ProductPage page(@RequestParam(value = "after", required = false) Integer after,
+			@RequestParam(value = "size", defaultValue = "20") int size) {
+		return productDAO.listAfter(after, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+	}
+
+	@RequestMapping(value = "/products/search", method = RequestMethod.GET, produces = "application/json")
+	@ResponseBody
+	public List<SearchHit> search(@RequestParam("q") String query,
+			@RequestParam(value = "limit", defaultValue = "10") int limit) {
+		return searchIndex.search(query, Math.min(limit, MAX_SEARCH_RESULTS));
+	}
+
+	/**
+	 * Catalogo inteiro em JSON, lido em paginas por chave. Cada pagina e uma
+	 * transacao curta, entao um cliente lento segura a conexao com o banco so
+	 * enquanto uma pagina e lida, nao durante o download todo.
+	 */
+	@RequestMapping(value = "/products/export", method = RequestMethod.GET)
+	public void export(HttpServletResponse response) throws IOException {
+		response.setContentType("application/json;charset=UTF-8");
+		JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream());
+		generator.writeStartArray();
+		Integer after = null;
+		do {
+			ProductPage page = productDAO.listAfter(after, EXPORT_PAGE_SIZE);
+			for (Product product : page.getProducts()) {
+				mapper.writeValue(generator, product);
+			}
+			generator.flush();
+			after = page.getNext();
+		} while (after != null);
+		generator.writeEndArray();
+		generator.close();
+	}
 }
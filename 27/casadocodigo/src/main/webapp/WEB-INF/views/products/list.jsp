@@ -0,0 +1,22 @@
+<%@taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c"%>
+<!DOCTYPE html>
+<html>
+<head>
+<meta charset="UTF-8">
+<title>Livros</title>
+</head>
+<body>
+	<table>
+		<tr>
+			<td>Titulo</td>
+			<td>Paginas</td>
+		</tr>
+		<c:forEach items="${products}" var="product">
+			<tr>
+				<td>${product.title}</td>
+				<td>${product.numberOfPages}</td>
+			</tr>
+		</c:forEach>
+	</table>
+</body>
+</html>
@@ -0,0 +1,238 @@
+package br.com.casadocodigo.loja.carts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileCartStoreTest {
+
+	private static final long TTL = TimeUnit.DAYS.toMillis(1);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private MappedFileCartStore store;
+
+	@Before
+	public void openStore() throws IOException {
+		file = folder.newFile("carts.dat");
+		store = new MappedFileCartStore(file, 8, 128, TTL);
+	}
+
+	@After
+	public void closeStore() throws IOException {
+		store.close();
+	}
+
+	@Test
+	public void putOnlyWritesOverTheExpectedVersion() throws IOException {
+		String cartId = newId();
+		assertTrue(store.put(cartId, bytes(1), CartStore.NO_VERSION));
+		StoredCart stored = store.get(cartId);
+		assertArrayEquals(bytes(1), stored.getCart());
+
+		assertFalse(store.put(cartId, bytes(2), CartStore.NO_VERSION));
+		assertTrue(store.put(cartId, bytes(3), stored.getVersion()));
+		assertFalse(store.put(cartId, bytes(4), stored.getVersion()));
+
+		StoredCart updated = store.get(cartId);
+		assertArrayEquals(bytes(3), updated.getCart());
+		assertTrue(updated.getVersion() > stored.getVersion());
+	}
+
+	@Test
+	public void deletedCartsAreNotResurrectedByStaleWrites() throws IOException {
+		String cartId = newId();
+		store.put(cartId, bytes(1), CartStore.NO_VERSION);
+		long version = store.get(cartId).getVersion();
+
+		store.delete(cartId);
+
+		assertNull(store.get(cartId));
+		assertFalse(store.put(cartId, bytes(2), version));
+		assertNull(store.get(cartId));
+	}
+
+	@Test
+	public void fullTableEvictsTheLeastRecentlyUsedCart() throws Exception {
+		// 8 slots guardam 7 carrinhos: um slot fica sempre vazio
+		String[] ids = new String[7];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = newId();
+			store.put(ids[i], bytes(i), CartStore.NO_VERSION);
+			Thread.sleep(2);
+		}
+		// o primeiro passa a ser o mais recente
+		store.get(ids[0]);
+
+		String newcomer = newId();
+		assertTrue(store.put(newcomer, bytes(9), CartStore.NO_VERSION));
+
+		assertNotNull(store.get(newcomer));
+		assertNotNull(store.get(ids[0]));
+		assertNull(store.get(ids[1]));
+		store.close();
+		assertEquals(1, emptySlots());
+	}
+
+	@Test
+	public void removingFromTheMiddleOfASequenceKeepsTheRestReachable() throws IOException {
+		String first = newId(3);
+		String second = newId(3);
+		String third = newId(3);
+		store.put(first, bytes(1), CartStore.NO_VERSION);
+		store.put(second, bytes(2), CartStore.NO_VERSION);
+		store.put(third, bytes(3), CartStore.NO_VERSION);
+
+		store.delete(second);
+
+		assertNull(store.get(second));
+		assertArrayEquals(bytes(1), store.get(first).getCart());
+		assertArrayEquals(bytes(3), store.get(third).getCart());
+
+		store.delete(first);
+		String fourth = newId(3);
+		assertTrue(store.put(fourth, bytes(4), CartStore.NO_VERSION));
+
+		assertArrayEquals(bytes(3), store.get(third).getCart());
+		assertArrayEquals(bytes(4), store.get(fourth).getCart());
+	}
+
+	@Test
+	public void deletedCartsLeaveTheirSlotsEmpty() throws IOException {
+		for (int i = 0; i < 100; i++) {
+			String cartId = newId();
+			store.put(cartId, bytes(i), CartStore.NO_VERSION);
+			store.delete(cartId);
+		}
+		store.close();
+
+		assertEquals(8, emptySlots());
+	}
+
+	@Test
+	public void expiredCartsAreGone() throws Exception {
+		store.close();
+		store = new MappedFileCartStore(file, 8, 128, 1);
+		String cartId = newId();
+		store.put(cartId, bytes(1), CartStore.NO_VERSION);
+
+		Thread.sleep(10);
+
+		assertNull(store.get(cartId));
+		assertTrue(store.put(cartId, bytes(2), CartStore.NO_VERSION));
+	}
+
+	@Test
+	public void rejectsTheWholeBatchIfOneCartDoesNotFit() throws IOException {
+		String small = newId();
+		String large = newId();
+		Map<String, StoredCart> batch = new LinkedHashMap<>();
+		batch.put(small, new StoredCart(bytes(1), 10));
+		batch.put(large, new StoredCart(new byte[200], 11));
+
+		try {
+			store.putAll(batch);
+			fail("O segundo carrinho nao cabe no slot");
+		} catch (IOException expected) {
+		}
+
+		assertNull(store.get(small));
+		assertNull(store.get(large));
+	}
+
+	@Test
+	public void putAllKeepsTheGivenVersions() throws IOException {
+		String first = newId();
+		String second = newId();
+		Map<String, StoredCart> batch = new LinkedHashMap<>();
+		batch.put(first, new StoredCart(bytes(1), 10));
+		batch.put(second, new StoredCart(bytes(2), 11));
+
+		store.putAll(batch);
+
+		assertEquals(10, store.get(first).getVersion());
+		assertArrayEquals(bytes(2), store.get(second).getCart());
+	}
+
+	@Test
+	public void cartsSurviveReopening() throws IOException {
+		String cartId = newId();
+		store.put(cartId, bytes(1), CartStore.NO_VERSION);
+		store.close();
+
+		store = new MappedFileCartStore(file, 8, 128, TTL);
+
+		assertArrayEquals(bytes(1), store.get(cartId).getCart());
+	}
+
+	@Test
+	public void fileOfAnotherFormatIsCleared() throws IOException {
+		String cartId = newId();
+		store.put(cartId, bytes(1), CartStore.NO_VERSION);
+		store.close();
+		try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+			raw.seek(4);
+			raw.writeInt(1);
+		}
+
+		store = new MappedFileCartStore(file, 8, 128, TTL);
+
+		assertNull(store.get(cartId));
+	}
+
+	private static String newId() {
+		return UUID.randomUUID().toString();
+	}
+
+	/**
+	 * Id cuja sequencia comeca no slot dado, na tabela de 8 slots.
+	 */
+	private static String newId(int slot) {
+		while (true) {
+			UUID id = UUID.randomUUID();
+			if ((id.hashCode() & Integer.MAX_VALUE) % 8 == slot) {
+				return id.toString();
+			}
+		}
+	}
+
+	/**
+	 * Slots vazios no arquivo fechado; o estado e o primeiro byte do slot.
+	 */
+	private int emptySlots() throws IOException {
+		int empty = 0;
+		try (RandomAccessFile raw = new RandomAccessFile(file, "r")) {
+			for (int slot = 0; slot < 8; slot++) {
+				raw.seek(8 + slot * 128);
+				if (raw.readByte() == 0) {
+					empty++;
+				}
+			}
+		}
+		return empty;
+	}
+
+	private static byte[] bytes(int value) {
+		return new byte[] { (byte) value, (byte) (value + 1), (byte) (value + 2) };
+	}
+}
@@ -0,0 +1,103 @@
+package br.com.casadocodigo.loja.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolExhaustedException;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Pool de verdade (tomcat-jdbc) sobre um H2 em memoria, com uma conexao so,
+ * para conferir os numeros de {@link MonitoredDataSource#stats()}.
+ */
+public class MonitoredDataSourceTest {
+
+	private MonitoredDataSource dataSource;
+
+	@Before
+	public void openPool() {
+		PoolProperties properties = new PoolProperties();
+		properties.setDriverClassName("org.h2.Driver");
+		properties.setUrl("jdbc:h2:mem:monitored;DB_CLOSE_DELAY=-1");
+		properties.setUsername("sa");
+		properties.setPassword("");
+		properties.setInitialSize(0);
+		properties.setMinIdle(0);
+		properties.setMaxIdle(1);
+		properties.setMaxActive(1);
+		properties.setMaxWait(50);
+		dataSource = new MonitoredDataSource(new DataSource(properties));
+	}
+
+	@After
+	public void closePool() {
+		dataSource.close();
+	}
+
+	@Test
+	public void countsAcquiredConnections() throws Exception {
+		try (Connection connection = dataSource.getConnection()) {
+			assertFalse(connection.isClosed());
+			Map<String, Object> stats = dataSource.stats();
+			assertEquals(1, stats.get("active"));
+			assertEquals(1, stats.get("maxActive"));
+			assertEquals(1L, stats.get("acquired"));
+		}
+		try (Connection connection = dataSource.getConnection()) {
+			// devolvida e pega de novo
+			assertFalse(connection.isClosed());
+		}
+
+		Map<String, Object> stats = dataSource.stats();
+		assertEquals(0, stats.get("active"));
+		assertEquals(1, stats.get("idle"));
+		assertEquals(2L, stats.get("acquired"));
+		assertEquals(0L, stats.get("timeouts"));
+		assertEquals(0L, stats.get("failures"));
+	}
+
+	@Test
+	public void countsTimeoutsWhenThePoolIsExhausted() throws Exception {
+		try (Connection connection = dataSource.getConnection()) {
+			assertFalse(connection.isClosed());
+			try {
+				dataSource.getConnection().close();
+				fail("O pool so tem uma conexao");
+			} catch (PoolExhaustedException expected) {
+			}
+		}
+
+		Map<String, Object> stats = dataSource.stats();
+		assertEquals(1L, stats.get("acquired"));
+		assertEquals(1L, stats.get("timeouts"));
+		assertEquals(0L, stats.get("failures"));
+	}
+
+	@Test
+	public void countsOtherFailuresSeparately() throws Exception {
+		PoolProperties properties = new PoolProperties();
+		properties.setDriverClassName("org.h2.Driver");
+		properties.setUrl("jdbc:h2:mem:broken;UNKNOWN_SETTING=1");
+		properties.setInitialSize(0);
+		MonitoredDataSource broken = new MonitoredDataSource(new DataSource(properties));
+		try {
+			broken.getConnection().close();
+			fail("A URL tem uma opcao invalida");
+		} catch (SQLException expected) {
+		} finally {
+			broken.close();
+		}
+
+		assertEquals(1L, broken.stats().get("failures"));
+		assertEquals(0L, broken.stats().get("timeouts"));
+	}
+}
@@ -0,0 +1,122 @@
+package br.com.casadocodigo.loja.jdbc;
+
+import static br.com.casadocodigo.loja.jdbc.ReplicaLagMonitorTest.execute;
+import static br.com.casadocodigo.loja.jdbc.ReplicaLagMonitorTest.h2;
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Primario e replica sao dois H2 em memoria; cada um tem uma tabela com o
+ * proprio nome, para o teste saber onde a conexao foi parar.
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+	private MonitoredDataSource primary;
+	private MonitoredDataSource replica;
+	private ReplicaLagMonitor lagMonitor;
+	private ReadWriteRoutingDataSource routing;
+
+	@Before
+	public void openDatabases() throws SQLException {
+		primary = h2("routing-primary");
+		replica = h2("routing-replica");
+		execute(primary, "CREATE TABLE server (name VARCHAR(16))");
+		execute(primary, "INSERT INTO server VALUES ('primary')");
+		execute(replica, "CREATE TABLE server (name VARCHAR(16))");
+		execute(replica, "INSERT INTO server VALUES ('replica')");
+		execute(replica, "CREATE TABLE slave_status (Seconds_Behind_Master BIGINT)");
+		execute(replica, "INSERT INTO slave_status VALUES (0)");
+
+		lagMonitor = new ReplicaLagMonitor(replica, 5, 60000, false, ReplicaLagMonitorTest.STATUS_QUERY);
+		routing = new ReadWriteRoutingDataSource(primary, replica, lagMonitor);
+		routing.afterPropertiesSet();
+	}
+
+	@After
+	public void closeDatabases() throws SQLException {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+		lagMonitor.close();
+		execute(primary, "DROP ALL OBJECTS");
+		execute(replica, "DROP ALL OBJECTS");
+		primary.close();
+		replica.close();
+	}
+
+	@Test
+	public void writesGoToThePrimary() throws SQLException {
+		lagMonitor.check();
+
+		assertEquals("primary", server());
+		assertEquals(1L, stats("primary").get("connections"));
+		assertEquals(0L, stats("replica").get("connections"));
+	}
+
+	@Test
+	public void readOnlyTransactionsGoToAnUpToDateReplica() throws SQLException {
+		lagMonitor.check();
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+		assertEquals("replica", server());
+		assertEquals(1L, stats("replica").get("connections"));
+		assertEquals(0L, stats("primary").get("readFallbacks"));
+	}
+
+	@Test
+	public void readsFallBackToThePrimaryWhenTheReplicaLags() throws SQLException {
+		execute(replica, "UPDATE slave_status SET Seconds_Behind_Master = 30");
+		lagMonitor.check();
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+		assertEquals("primary", server());
+		assertEquals(1L, stats("primary").get("readFallbacks"));
+		assertEquals(30L, stats("replica").get("lagSeconds"));
+	}
+
+	@Test
+	public void readsFallBackToThePrimaryWhenTheReplicaHasNoStatus() throws SQLException {
+		execute(replica, "DELETE FROM slave_status");
+		lagMonitor.check();
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+		assertEquals("primary", server());
+		assertEquals(1L, stats("primary").get("readFallbacks"));
+		assertEquals(false, stats("replica").get("usable"));
+	}
+
+	@Test
+	public void readsReturnToTheReplicaWhenItCatchesUp() throws SQLException {
+		execute(replica, "UPDATE slave_status SET Seconds_Behind_Master = 30");
+		lagMonitor.check();
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertEquals("primary", server());
+
+		execute(replica, "UPDATE slave_status SET Seconds_Behind_Master = 1");
+		lagMonitor.check();
+
+		assertEquals("replica", server());
+		assertEquals(1L, stats("primary").get("readFallbacks"));
+	}
+
+	private String server() throws SQLException {
+		try (Connection connection = routing.getConnection();
+				Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery("SELECT name FROM server")) {
+			result.next();
+			return result.getString(1);
+		}
+	}
+
+	private Map<String, Object> stats(String dataSource) {
+		return routing.stats().get(dataSource);
+	}
+}
@@ -0,0 +1,139 @@
+package br.com.casadocodigo.loja.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * O H2 nao tem SHOW SLAVE STATUS; uma tabela com a coluna
+ * Seconds_Behind_Master faz o papel do status da replica.
+ */
+public class ReplicaLagMonitorTest {
+
+	static final String STATUS_QUERY = "SELECT Seconds_Behind_Master FROM slave_status";
+
+	private MonitoredDataSource replica;
+	private ReplicaLagMonitor monitor;
+
+	@Before
+	public void openReplica() throws SQLException {
+		replica = h2("lagmonitor");
+		execute(replica, "CREATE TABLE slave_status (Seconds_Behind_Master BIGINT)");
+	}
+
+	@After
+	public void closeReplica() throws SQLException {
+		if (monitor != null) {
+			monitor.close();
+		}
+		execute(replica, "DROP TABLE slave_status");
+		replica.close();
+	}
+
+	@Test
+	public void replicaWithinTheLimitIsUsable() throws SQLException {
+		execute(replica, "INSERT INTO slave_status VALUES (2)");
+		monitor = monitor(false);
+
+		monitor.check();
+
+		assertTrue(monitor.isUsable());
+		assertEquals(2, monitor.getLagSeconds());
+	}
+
+	@Test
+	public void laggingReplicaIsNotUsable() throws SQLException {
+		execute(replica, "INSERT INTO slave_status VALUES (10)");
+		monitor = monitor(false);
+
+		monitor.check();
+
+		assertFalse(monitor.isUsable());
+		assertEquals(10, monitor.getLagSeconds());
+	}
+
+	@Test
+	public void stoppedReplicationIsNotUsable() throws SQLException {
+		execute(replica, "INSERT INTO slave_status VALUES (NULL)");
+		monitor = monitor(false);
+
+		monitor.check();
+
+		assertFalse(monitor.isUsable());
+		assertEquals(ReplicaLagMonitor.UNKNOWN_LAG, monitor.getLagSeconds());
+	}
+
+	@Test
+	public void serverWithoutReplicaStatusIsNotUsable() {
+		monitor = monitor(false);
+
+		monitor.check();
+
+		assertFalse(monitor.isUsable());
+		assertEquals(ReplicaLagMonitor.UNKNOWN_LAG, monitor.getLagSeconds());
+	}
+
+	@Test
+	public void serverWithoutReplicaStatusIsThePrimaryWhenConfiguredSo() {
+		monitor = monitor(true);
+
+		monitor.check();
+
+		assertTrue(monitor.isUsable());
+		assertEquals(0, monitor.getLagSeconds());
+	}
+
+	@Test
+	public void failingQueryIsNotUsable() throws SQLException {
+		execute(replica, "INSERT INTO slave_status VALUES (0)");
+		monitor = monitor(false);
+		monitor.check();
+		assertTrue(monitor.isUsable());
+
+		execute(replica, "ALTER TABLE slave_status RENAME TO old_status");
+		try {
+			monitor.check();
+		} finally {
+			execute(replica, "ALTER TABLE old_status RENAME TO slave_status");
+		}
+
+		assertFalse(monitor.isUsable());
+		assertEquals(ReplicaLagMonitor.UNKNOWN_LAG, monitor.getLagSeconds());
+	}
+
+	private ReplicaLagMonitor monitor(boolean replicaIsPrimary) {
+		// intervalo longo: os testes chamam check() direto
+		return new ReplicaLagMonitor(replica, 5, 60000, replicaIsPrimary, STATUS_QUERY);
+	}
+
+	static MonitoredDataSource h2(String name) {
+		PoolProperties properties = new PoolProperties();
+		properties.setDriverClassName("org.h2.Driver");
+		properties.setUrl("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+		properties.setUsername("sa");
+		properties.setPassword("");
+		properties.setInitialSize(0);
+		properties.setMinIdle(0);
+		properties.setMaxIdle(2);
+		properties.setMaxActive(2);
+		return new MonitoredDataSource(new org.apache.tomcat.jdbc.pool.DataSource(properties));
+	}
+
+	static void execute(DataSource dataSource, String sql) throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+}
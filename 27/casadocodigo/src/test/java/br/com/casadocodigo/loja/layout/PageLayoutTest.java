@@ -0,0 +1,71 @@
+package br.com.casadocodigo.loja.layout;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PageLayoutTest {
+
+	@Test
+	public void splitsHeadAndFooterAtTheBody() throws IOException {
+		PageLayout layout = PageLayout.parse("<title>{{title}}</title><main>{{body}}</main><p>{{title}}</p>");
+		Map<String, String> slots = new HashMap<>();
+		slots.put("title", "Livros");
+
+		assertEquals("<title>Livros</title><main>", head(layout, slots));
+		assertEquals("</main><p>Livros</p>", footer(layout, slots));
+	}
+
+	@Test
+	public void escapesSlotValues() throws IOException {
+		PageLayout layout = PageLayout.parse("<body class=\"{{bodyClass}}\">{{body}}</body>");
+		Map<String, String> slots = new HashMap<>();
+		slots.put("bodyClass", "\"><script>");
+
+		assertEquals("<body class=\"&quot;&gt;&lt;script&gt;\">", head(layout, slots));
+	}
+
+	@Test
+	public void writesUtf8() throws IOException {
+		PageLayout layout = PageLayout.parse("<a>Sobre nós</a>{{title}}{{body}}");
+		Map<String, String> slots = new HashMap<>();
+		slots.put("title", "Casa do Código");
+
+		assertEquals("<a>Sobre nós</a>Casa do C&oacute;digo", head(layout, slots));
+	}
+
+	@Test
+	public void missingSlotsAreLeftEmpty() throws IOException {
+		PageLayout layout = PageLayout.parse("[{{cartQuantity}}]{{body}}");
+
+		assertEquals("[]", head(layout, new HashMap<String, String>()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void requiresABody() {
+		PageLayout.parse("<html>{{title}}</html>");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsASecondBody() {
+		PageLayout.parse("{{body}}{{body}}");
+	}
+
+	private static String head(PageLayout layout, Map<String, String> slots) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		layout.writeHead(out, slots);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static String footer(PageLayout layout, Map<String, String> slots) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		layout.writeFooter(out, slots);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,86 @@
+package br.com.casadocodigo.loja.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+public class PriceTableTest {
+
+	@Test
+	public void looksUpPricesByProductAndBookType() {
+		PriceTable table = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.add(1, BookType.COMBO, new BigDecimal("59.90"))
+				.add(7, BookType.IMPRESSO, new BigDecimal("39.9"))
+				.build();
+
+		assertEquals(2, table.size());
+		assertEquals(2990, table.cents(1, BookType.EBOOK));
+		assertEquals(5990, table.cents(1, BookType.COMBO));
+		assertEquals(3990, table.cents(7, BookType.IMPRESSO));
+		assertEquals(new BigDecimal("39.90"), table.price(7, BookType.IMPRESSO));
+	}
+
+	@Test
+	public void missingPricesHaveNoPrice() {
+		PriceTable table = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.build();
+
+		assertEquals(PriceTable.NO_PRICE, table.cents(1, BookType.IMPRESSO));
+		assertEquals(PriceTable.NO_PRICE, table.cents(2, BookType.EBOOK));
+		assertNull(table.price(2, BookType.EBOOK));
+	}
+
+	@Test
+	public void versionDependsOnlyOnContent() {
+		PriceTable first = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.add(2, BookType.EBOOK, new BigDecimal("19.90"))
+				.build();
+		PriceTable same = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.9"))
+				.add(2, BookType.EBOOK, new BigDecimal("19.90"))
+				.build();
+		PriceTable changed = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.add(2, BookType.EBOOK, new BigDecimal("24.90"))
+				.build();
+
+		assertEquals(first.getVersion(), same.getVersion());
+		assertNotEquals(first.getVersion(), changed.getVersion());
+		assertTrue(first.getVersion() >= 0);
+	}
+
+	@Test
+	public void growsPastTheInitialCapacity() {
+		PriceTable.Builder builder = new PriceTable.Builder();
+		for (int id = 1; id <= 5000; id++) {
+			builder.add(id, BookType.EBOOK, BigDecimal.valueOf(id, 2));
+		}
+		PriceTable table = builder.build();
+
+		assertEquals(5000, table.size());
+		assertEquals(1, table.cents(1, BookType.EBOOK));
+		assertEquals(5000, table.cents(5000, BookType.EBOOK));
+		assertEquals(PriceTable.NO_PRICE, table.cents(5000, BookType.COMBO));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsPricesOutOfProductOrder() {
+		new PriceTable.Builder()
+				.add(2, BookType.EBOOK, new BigDecimal("29.90"))
+				.add(1, BookType.EBOOK, new BigDecimal("19.90"));
+	}
+
+	@Test
+	public void convertsBetweenPricesAndCents() {
+		assertEquals(1000, PriceTable.toCents(new BigDecimal("9.995")));
+		assertEquals(new BigDecimal("10.00"), PriceTable.toPrice(1000));
+	}
+}
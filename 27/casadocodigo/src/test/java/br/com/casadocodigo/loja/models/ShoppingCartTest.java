@@ -0,0 +1,126 @@
+package br.com.casadocodigo.loja.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShoppingCartTest {
+
+	private Catalog catalog;
+	private ShoppingItem ebook;
+	private ShoppingItem printed;
+
+	@Before
+	public void createItems() {
+		catalog = new Catalog();
+		ebook = new ShoppingItem(product(1), BookType.EBOOK);
+		printed = new ShoppingItem(product(2), BookType.IMPRESSO);
+	}
+
+	@Test
+	public void itemBackOnSaleIsARepricing() {
+		catalog.table = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.build();
+		ShoppingCart cart = new ShoppingCart(catalog);
+		cart.add(ebook);
+		cart.add(printed);
+		assertTrue(cart.hasUnavailableItems());
+		assertEquals(2990, cart.getTotalInCents());
+
+		catalog.table = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.add(2, BookType.IMPRESSO, new BigDecimal("39.90"))
+				.build();
+
+		assertFalse(cart.hasUnavailableItems());
+		assertTrue(cart.isRepriced());
+		assertEquals(6980, cart.getTotalInCents());
+	}
+
+	@Test
+	public void unchangedPricesAreNotARepricing() {
+		catalog.table = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.build();
+		ShoppingCart cart = new ShoppingCart(catalog);
+		cart.add(ebook);
+
+		catalog.table = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.add(3, BookType.COMBO, new BigDecimal("49.90"))
+				.build();
+
+		assertFalse(cart.isRepriced());
+		assertEquals(2990, cart.getTotalInCents());
+	}
+
+	@Test
+	public void storedCartKeepsItsPricesWithAnUnavailableItem() throws Exception {
+		catalog.table = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.build();
+		ShoppingCart cart = new ShoppingCart(catalog);
+		cart.add(ebook);
+		cart.add(ebook);
+		cart.add(printed);
+
+		ShoppingCart stored = copy(cart);
+
+		assertEquals(3, stored.getQuantity());
+		assertEquals(5980, stored.getTotalInCents());
+		assertTrue(stored.hasUnavailableItems());
+		assertFalse(stored.isRepriced());
+
+		catalog.table = new PriceTable.Builder()
+				.add(1, BookType.EBOOK, new BigDecimal("29.90"))
+				.add(2, BookType.IMPRESSO, new BigDecimal("39.90"))
+				.build();
+
+		assertTrue(stored.isRepriced());
+		assertEquals(9970, stored.getTotalInCents());
+	}
+
+	private ShoppingCart copy(ShoppingCart cart) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			cart.writeExternal(out);
+		}
+		ShoppingCart copy = new ShoppingCart(catalog);
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy.readExternal(in);
+		}
+		return copy;
+	}
+
+	private static Product product(int id) {
+		Product product = new Product();
+		product.setId(id);
+		return product;
+	}
+
+	private static class Catalog implements CartCatalog {
+
+		private PriceTable table;
+
+		@Override
+		public PriceTable priceTable() {
+			return table;
+		}
+
+		@Override
+		public Product product(Integer id) {
+			return null;
+		}
+	}
+}
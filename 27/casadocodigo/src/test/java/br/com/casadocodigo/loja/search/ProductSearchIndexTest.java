@@ -0,0 +1,95 @@
+package br.com.casadocodigo.loja.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.casadocodigo.loja.models.Product;
+
+public class ProductSearchIndexTest {
+
+	private ProductSearchIndex index;
+
+	@Before
+	public void buildIndex() throws IOException {
+		index = new ProductSearchIndex();
+		List<Product> catalog = Arrays.asList(
+				product(1, "Java 8 Prático", "Lambdas e streams em Java, com exemplos em Spring"),
+				product(2, "Desbravando Java", "Orientação a objetos com Java"),
+				product(3, "Jogos com HTML5", "Canvas e WebGL para jogos"),
+				product(4, "Spring MVC", "Aplicações web em Java com o Spring"));
+		index.rebuild(handler -> {
+			for (Product product : catalog) {
+				handler.handle(product);
+			}
+		});
+	}
+
+	@Test
+	public void titleMatchesComeFirst() {
+		assertEquals(Arrays.asList(4, 1), ids(index.search("spring", 10)));
+	}
+
+	@Test
+	public void lastWordIsAPrefix() {
+		assertEquals(Arrays.asList(3), ids(index.search("jog", 10)));
+		assertEquals(Arrays.asList(1, 2, 4), ids(index.search("ja", 10)));
+	}
+
+	@Test
+	public void allWordsMustMatchIgnoringAccentsAndStopWords() {
+		assertEquals(Arrays.asList(2), ids(index.search("orientacao a objetos", 10)));
+		assertEquals(Arrays.asList(4), ids(index.search("aplicações de spring", 10)));
+		assertTrue(index.search("java canvas", 10).isEmpty());
+	}
+
+	@Test
+	public void stopWordsAloneFindNothing() {
+		assertTrue(index.search("a", 10).isEmpty());
+		assertTrue(index.search("", 10).isEmpty());
+	}
+
+	@Test
+	public void respectsTheLimit() {
+		assertEquals(Arrays.asList(1, 2), ids(index.search("java", 2)));
+	}
+
+	@Test
+	public void reindexedProductsLoseTheirOldTerms() {
+		index.index(product(3, "Jogos com Unity", "C# para jogos"));
+
+		assertTrue(index.search("html5", 10).isEmpty());
+		assertEquals(Arrays.asList(3), ids(index.search("unity", 10)));
+		assertEquals(4, index.size());
+	}
+
+	@Test
+	public void indexesRightAwayWithoutATransaction() {
+		index.indexAfterCommit(Arrays.asList(product(5, "Java EE 7", "Servlets e JPA")));
+
+		assertEquals(Arrays.asList(1, 2, 5, 4), ids(index.search("java", 10)));
+	}
+
+	private static List<Integer> ids(List<SearchHit> hits) {
+		List<Integer> ids = new ArrayList<>();
+		for (SearchHit hit : hits) {
+			ids.add(hit.getId());
+		}
+		return ids;
+	}
+
+	private static Product product(int id, String title, String description) {
+		Product product = new Product();
+		product.setId(id);
+		product.setTitle(title);
+		product.setDescription(description);
+		return product;
+	}
+}